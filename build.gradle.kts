@@ -18,4 +18,30 @@ dependencies {
 java {
     // Using Java 23 as specified by the original project
     toolchain.languageVersion.set(JavaLanguageVersion.of(23))
-}
\ No newline at end of file
+}
+// Offline performance harness: stub backend, session churn driver and HTTP load generator
+val perf by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+val perfImplementation by configurations.getting {
+    extendsFrom(configurations.implementation.get())
+}
+
+dependencies {
+    perfImplementation("io.papermc.paper:paper-api:1.21.11-R0.1-SNAPSHOT")
+}
+
+fun registerPerfTask(name: String, mainClassName: String) {
+    tasks.register<JavaExec>(name) {
+        group = "verification"
+        description = "Runs $mainClassName, pass options with -PperfArgs=\"--seconds 60\""
+        classpath = perf.runtimeClasspath
+        mainClass.set("io.github.ariuan.connectorPlugin.perf.$mainClassName")
+        args = (project.findProperty("perfArgs") as String?)?.split(" ")?.filter { it.isNotBlank() } ?: emptyList()
+    }
+}
+
+registerPerfTask("perfSessions", "SessionChurnDriver")
+registerPerfTask("perfHttp", "HttpLoadGenerator")
@@ -0,0 +1,150 @@
+package io.github.ariuan.connectorPlugin;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides whether the HTTP server takes on a request, never waiting, so an overloaded route is answered right away.
+ * <p>
+ * Routes with a limit have a token bucket (over the rate: 429) and a concurrency cap (over it: 503).
+ * All routes except the reserved ones also share a pool of concurrent requests (exhausted: 503).
+ * Reserved routes such as /ping have their own pool that the others can't use, and fall back to the shared one when it's full,
+ * so health checks keep working while an expensive route is flooded.
+ */
+public class AdmissionControl {
+    /**
+     * @param concurrency   Requests of the route handled at once, 0 for no cap
+     * @param ratePerSecond Sustained request rate, 0 for no rate limit
+     * @param burst         Requests allowed at once above the rate
+     */
+    public record RouteLimit(int concurrency, double ratePerSecond, double burst) {
+    }
+
+    private final Semaphore shared;
+    private final Semaphore reserved;
+    private final Set<String> reservedRoutes;
+    private final Map<String, Route> routes = new HashMap<>();
+    private final Map<String, LongAdder> rejectedByRoute = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxConcurrency      Requests of all non-reserved routes handled at once, 0 for no cap
+     * @param reservedConcurrency Requests of the reserved routes handled at once on top of that
+     */
+    public AdmissionControl(int maxConcurrency, int reservedConcurrency, Set<String> reservedRoutes, Map<String, RouteLimit> limits) {
+        this.shared = maxConcurrency > 0 ? new Semaphore(maxConcurrency) : null;
+        this.reserved = new Semaphore(Math.max(0, reservedConcurrency));
+        this.reservedRoutes = Set.copyOf(reservedRoutes);
+        limits.forEach((route, limit) -> routes.put(route, new Route(limit)));
+    }
+
+    /**
+     * Admit a request, the returned permit must be closed once its response is built
+     *
+     * @throws Rejected if the request is over a limit
+     */
+    public Permit admit(String route) {
+        Route limits = routes.get(route);
+        Semaphore routeSlots = limits != null ? limits.slots : null;
+        if (routeSlots != null && !routeSlots.tryAcquire()) {
+            throw reject(route, new Rejected(false, 1, "Too many concurrent requests to " + route));
+        }
+        Semaphore pool;
+        if (reservedRoutes.contains(route) && reserved.tryAcquire()) {
+            pool = reserved;
+        } else if (shared == null || shared.tryAcquire()) {
+            pool = shared;
+        } else {
+            if (routeSlots != null) routeSlots.release();
+            throw reject(route, new Rejected(false, 1, "Server is busy"));
+        }
+        Permit permit = new Permit(routeSlots, pool);
+        // Taken last, so a request turned away for concurrency doesn't use up the rate of the ones that come after it
+        if (limits != null && limits.bucket != null && !limits.bucket.tryAcquire()) {
+            permit.close();
+            long retryAfter = Math.max(1, (long) Math.ceil(limits.bucket.nanosUntilAvailable() / (double) TimeUnit.SECONDS.toNanos(1)));
+            throw reject(route, new Rejected(true, retryAfter, "Rate limit of " + route + " exceeded"));
+        }
+        return permit;
+    }
+
+    public void writeStats(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("sharedAvailable").value(shared != null ? shared.availablePermits() : -1);
+        writer.name("reservedAvailable").value(reserved.availablePermits());
+        writer.name("rejected").beginObject();
+        for (Map.Entry<String, LongAdder> entry : rejectedByRoute.entrySet()) {
+            writer.name(entry.getKey()).value(entry.getValue().sum());
+        }
+        writer.endObject();
+        writer.endObject();
+    }
+
+    private Rejected reject(String route, Rejected rejected) {
+        // Only configured routes get their own counter, so unknown URIs can't grow the map
+        String key = routes.containsKey(route) || reservedRoutes.contains(route) ? route : "other";
+        rejectedByRoute.computeIfAbsent(key, k -> new LongAdder()).increment();
+        return rejected;
+    }
+
+    private static class Route {
+        private final TokenBucket bucket;
+        private final Semaphore slots;
+
+        private Route(RouteLimit limit) {
+            this.bucket = limit.ratePerSecond() > 0 ? new TokenBucket(limit.ratePerSecond(), Math.max(1, limit.burst())) : null;
+            this.slots = limit.concurrency() > 0 ? new Semaphore(limit.concurrency()) : null;
+        }
+    }
+
+    /**
+     * Capacity held by an admitted request
+     */
+    public static final class Permit implements AutoCloseable {
+        private final Semaphore routeSlots;
+        private final Semaphore pool;
+
+        private Permit(Semaphore routeSlots, Semaphore pool) {
+            this.routeSlots = routeSlots;
+            this.pool = pool;
+        }
+
+        @Override
+        public void close() {
+            if (pool != null) pool.release();
+            if (routeSlots != null) routeSlots.release();
+        }
+    }
+
+    /**
+     * A request turned away, thrown without a stack trace since rejections are expected under load
+     */
+    public static final class Rejected extends RuntimeException {
+        private final boolean rateLimited;
+        private final long retryAfterSeconds;
+
+        private Rejected(boolean rateLimited, long retryAfterSeconds, String message) {
+            super(message, null, false, false);
+            this.rateLimited = rateLimited;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        /**
+         * @return true for a 429 over the rate limit, false for a 503 over a concurrency cap
+         */
+        public boolean isRateLimited() {
+            return rateLimited;
+        }
+
+        public long getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package io.github.ariuan.connectorPlugin;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Sends requests to one or more backend nodes.
+ * Requests are spread round-robin over healthy nodes and fail over to the next node on network errors,
+ * nodes are health-checked in the background, and hedged requests race a second node when the first is slow.
+ */
+public class BackendClient {
+    private static final int TIMEOUT_MILLIS = 5000;
+    private static final long DEFAULT_HEDGE_DELAY_MILLIS = 500;
+    private static final long MIN_HEDGE_DELAY_MILLIS = 20;
+    private static final int MIN_LATENCY_SAMPLES = 20;
+
+    private final Logger logger;
+    private final List<Node> nodes;
+    private final String healthPath;
+    private final double hedgePercentile;
+    private final AtomicInteger cursor = new AtomicInteger();
+    private final LatencyWindow latencies = new LatencyWindow(256);
+    private volatile boolean healthChecksPaused;
+    private final ExecutorService requestExecutor = Executors.newCachedThreadPool(daemonThreads("ConnectorBackend"));
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("ConnectorBackendScheduler"));
+
+    public record BackendResponse(int code, String body) {
+        public boolean isOk() {
+            return code == 200;
+        }
+
+        public JsonObject json() {
+            return JsonParser.parseString(body).getAsJsonObject();
+        }
+    }
+
+    public BackendClient(Logger logger, List<String> urls, String healthPath, long healthCheckSeconds, double hedgePercentile) {
+        if (urls.isEmpty()) {
+            throw new IllegalArgumentException("At least one backend URL is required");
+        }
+        this.logger = logger;
+        this.nodes = urls.stream().map(Node::new).toList();
+        this.healthPath = healthPath;
+        this.hedgePercentile = hedgePercentile;
+        if (nodes.size() > 1 && healthCheckSeconds > 0) {
+            scheduler.scheduleWithFixedDelay(this::checkHealth, 0, healthCheckSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    public List<String> getUrls() {
+        return nodes.stream().map(node -> node.url).toList();
+    }
+
+    public int getHealthyNodeCount() {
+        return (int) nodes.stream().filter(node -> node.healthy).count();
+    }
+
+    /**
+     * @return whether each node is currently considered healthy, in configuration order
+     */
+    public Map<String, Boolean> getNodeHealth() {
+        Map<String, Boolean> health = new LinkedHashMap<>();
+        for (Node node : nodes) {
+            health.put(node.url, node.healthy);
+        }
+        return health;
+    }
+
+    /**
+     * @return the latency of recent successful requests at the given percentile in milliseconds, or -1 if none were recorded
+     */
+    public long getLatencyPercentile(double percentile) {
+        return latencies.percentile(percentile, 1);
+    }
+
+    /**
+     * POST a JSON body, trying the next healthy node whenever one fails with a network error
+     *
+     * @param path Endpoint path such as "/play"
+     * @return the response of the first node that answered
+     * @throws IOException if every node failed
+     */
+    public BackendResponse post(String path, JsonObject json) throws IOException {
+        String body = json.toString();
+        IOException lastError = null;
+        for (Node node : pickNodes(nodes.size())) {
+            try {
+                return send(node, path, body);
+            } catch (IOException e) {
+                markUnhealthy(node, e);
+                lastError = e;
+            }
+        }
+        throw lastError;
+    }
+
+    /**
+     * POST a JSON body with request hedging.
+     * If the first node hasn't answered within the configured latency percentile, the same request is sent
+     * to a second node and whichever answers first wins.
+     *
+     * @param path Endpoint path such as "/verify"
+     * @return the first response received
+     * @throws IOException if both nodes failed
+     */
+    public BackendResponse postHedged(String path, JsonObject json) throws IOException {
+        List<Node> candidates = pickNodes(2);
+        if (candidates.size() < 2) return post(path, json);
+
+        String body = json.toString();
+        CompletableFuture<BackendResponse> result = new CompletableFuture<>();
+        AtomicInteger remaining = new AtomicInteger(2);
+        AtomicBoolean hedged = new AtomicBoolean(false);
+        Runnable hedge = () -> {
+            if (!result.isDone() && hedged.compareAndSet(false, true)) {
+                requestExecutor.execute(() -> attempt(candidates.get(1), path, body, result, remaining, () -> {
+                }));
+            }
+        };
+
+        requestExecutor.execute(() -> attempt(candidates.get(0), path, body, result, remaining, hedge));
+        ScheduledFuture<?> hedgeTimer = scheduler.schedule(hedge, hedgeDelayMillis(), TimeUnit.MILLISECONDS);
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for " + path, e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        } finally {
+            hedgeTimer.cancel(false);
+        }
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+        requestExecutor.shutdownNow();
+    }
+
+    private void attempt(Node node, String path, String body, CompletableFuture<BackendResponse> result, AtomicInteger remaining, Runnable onFailure) {
+        long start = System.nanoTime();
+        try {
+            BackendResponse response = send(node, path, body);
+            latencies.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            result.complete(response);
+        } catch (IOException e) {
+            markUnhealthy(node, e);
+            if (remaining.decrementAndGet() == 0) {
+                result.completeExceptionally(e);
+            } else {
+                onFailure.run();
+            }
+        }
+    }
+
+    private long hedgeDelayMillis() {
+        long delay = latencies.percentile(hedgePercentile, MIN_LATENCY_SAMPLES);
+        return delay < 0 ? DEFAULT_HEDGE_DELAY_MILLIS : Math.max(MIN_HEDGE_DELAY_MILLIS, delay);
+    }
+
+    /**
+     * Pick up to count distinct nodes, healthy ones first, starting at the round-robin cursor
+     */
+    private List<Node> pickNodes(int count) {
+        int start = Math.floorMod(cursor.getAndIncrement(), nodes.size());
+        List<Node> healthy = new ArrayList<>();
+        List<Node> unhealthy = new ArrayList<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get((start + i) % nodes.size());
+            (node.healthy ? healthy : unhealthy).add(node);
+        }
+        healthy.addAll(unhealthy);
+        return healthy.subList(0, Math.min(count, healthy.size()));
+    }
+
+    private void markUnhealthy(Node node, IOException e) {
+        if (node.healthy && nodes.size() > 1) {
+            logger.warning("Backend " + node.url + " marked unhealthy: " + e.getMessage());
+        }
+        node.healthy = false;
+    }
+
+    private void markHealthy(Node node) {
+        if (!node.healthy && nodes.size() > 1) {
+            logger.info("Backend " + node.url + " is healthy again");
+        }
+        node.healthy = true;
+    }
+
+    /**
+     * Skip the periodic health checks, nodes keep their last known health until they are resumed
+     */
+    public void setHealthChecksPaused(boolean paused) {
+        healthChecksPaused = paused;
+    }
+
+    private void checkHealth() {
+        if (healthChecksPaused) return;
+        for (Node node : nodes) {
+            HttpURLConnection conn = null;
+            try {
+                conn = (HttpURLConnection) URI.create(node.url + healthPath).toURL().openConnection();
+                conn.setConnectTimeout(TIMEOUT_MILLIS);
+                conn.setReadTimeout(TIMEOUT_MILLIS);
+                if (conn.getResponseCode() < 500) {
+                    markHealthy(node);
+                } else {
+                    node.healthy = false;
+                }
+            } catch (IOException e) {
+                markUnhealthy(node, e);
+            } finally {
+                if (conn != null) conn.disconnect();
+            }
+        }
+    }
+
+    private BackendResponse send(Node node, String path, String body) throws IOException {
+        URL url = URI.create(node.url + path).toURL();
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+
+        try {
+            conn.setRequestMethod("POST");
+            conn.setRequestProperty("Content-Type", "application/json");
+            conn.setDoOutput(true);
+            conn.setConnectTimeout(TIMEOUT_MILLIS);
+            conn.setReadTimeout(TIMEOUT_MILLIS);
+
+            try (OutputStream os = conn.getOutputStream()) {
+                byte[] input = body.getBytes(StandardCharsets.UTF_8);
+                os.write(input, 0, input.length);
+            }
+
+            int responseCode = conn.getResponseCode();
+            // Health checks only run with several nodes, so an answer is what brings a single node back
+            if (responseCode < 500) {
+                markHealthy(node);
+            }
+            if (responseCode >= 500) {
+                throw new IOException("Backend " + node.url + " responded with " + responseCode);
+            }
+            if (responseCode != 200) {
+                return new BackendResponse(responseCode, "");
+            }
+            String response = new String(conn.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            return new BackendResponse(responseCode, response);
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static class Node {
+        private final String url;
+        private volatile boolean healthy = true;
+
+        private Node(String url) {
+            this.url = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+        }
+    }
+
+    /**
+     * Fixed-size ring of recent successful request latencies
+     */
+    private static class LatencyWindow {
+        private final long[] samples;
+        private int next;
+        private int size;
+
+        private LatencyWindow(int capacity) {
+            this.samples = new long[capacity];
+        }
+
+        private synchronized void record(long millis) {
+            samples[next] = millis;
+            next = (next + 1) % samples.length;
+            size = Math.min(size + 1, samples.length);
+        }
+
+        /**
+         * @return the latency at the given percentile, or -1 if fewer than minSamples were recorded
+         */
+        private synchronized long percentile(double percentile, int minSamples) {
+            if (size < minSamples) return -1;
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile * size) - 1;
+            return sorted[Math.max(0, Math.min(size - 1, index))];
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package io.github.ariuan.connectorPlugin;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Stores entries in compact binary segment files.
+ * <p>
+ * Each segment starts with the magic "DMCL" and a version byte, followed by records of
+ * {@code [int length][byte type][payload][int crc32 of type and payload]}.
+ * Dictionary records ({@code [short id][utf-8 string]}) assign ids to level and logger names,
+ * entry records are {@code [long epoch millis][short level id][short source id][utf-8 message]}.
+ * Ids are only valid inside the segment that defines them, so every segment can be read on its own.
+ */
+public class BinaryLogStore implements LogStore {
+    private static final int MAGIC = 0x444D434C; // "DMCL"
+    private static final byte VERSION = 1;
+    private static final byte TYPE_DICTIONARY = 0;
+    private static final byte TYPE_ENTRY = 1;
+    private static final int MAX_RECORD_LENGTH = 1 << 24;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".bin";
+    private static final int CACHED_DICTIONARIES = 8;
+
+    private final File directory;
+    private final long segmentBytes;
+    private final Map<String, Short> dictionary = new HashMap<>();
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream(256);
+    private final CRC32 crc = new CRC32();
+    // Dictionaries of sealed segments, needed to resolve ids when reading single entries
+    private final Map<Integer, Map<Short, String>> dictionaryCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Map<Short, String>> eldest) {
+            return size() > CACHED_DICTIONARIES;
+        }
+    };
+    private FileChannel channel;
+    private int segmentIndex;
+    // Segments from this index on were written by this instance and are already in memory
+    private final int firstOwnSegment;
+
+    public BinaryLogStore(File directory, long segmentBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create log directory " + directory);
+        }
+        List<File> segments = listSegments(directory);
+        segmentIndex = segments.isEmpty() ? 0 : segmentIndex(segments.get(segments.size() - 1));
+        // Always start a fresh segment, so a torn record from a crash is never followed by new data
+        openNextSegment();
+        firstOwnSegment = segmentIndex;
+    }
+
+    /**
+     * @return the segment index in the upper 32 bits and the record offset in the lower 32 bits
+     */
+    @Override
+    public synchronized long append(LogCaptureHandler.LogEntry entry) throws IOException {
+        if (channel.size() >= segmentBytes) {
+            openNextSegment();
+        }
+        short levelId = dictionaryId(entry.getLevel());
+        short sourceId = dictionaryId(entry.getSource());
+
+        recordBuffer.reset();
+        DataOutputStream out = new DataOutputStream(recordBuffer);
+        out.writeByte(TYPE_ENTRY);
+        out.writeLong(entry.getEpochMillis());
+        out.writeShort(levelId);
+        out.writeShort(sourceId);
+        out.write(entry.getMessage().getBytes(StandardCharsets.UTF_8));
+        long offset = channel.position();
+        writeRecord();
+        return ((long) segmentIndex << 32) | offset;
+    }
+
+    @Override
+    public LogCaptureHandler.LogEntry read(long address) throws IOException {
+        int index = (int) (address >>> 32);
+        long offset = address & 0xFFFFFFFFL;
+        File segment = segmentFile(index);
+        if (!segment.exists()) return null;
+
+        Map<Short, String> names = dictionaryFor(index, segment);
+        try (FileChannel reader = FileChannel.open(segment.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+            if (reader.read(lengthBuffer, offset) < 4) return null;
+            int length = lengthBuffer.flip().getInt();
+            if (length <= 0 || length > MAX_RECORD_LENGTH) return null;
+
+            ByteBuffer record = ByteBuffer.allocate(length);
+            while (record.hasRemaining()) {
+                if (reader.read(record, offset + 4 + record.position()) < 0) return null;
+            }
+            record.flip();
+            if (record.get() != TYPE_ENTRY) return null;
+            long millis = record.getLong();
+            String level = names.get(record.getShort());
+            String source = names.get(record.getShort());
+            String message = new String(record.array(), record.position(), record.remaining(), StandardCharsets.UTF_8);
+            return new LogCaptureHandler.LogEntry(message, level, source, Instant.ofEpochMilli(millis));
+        }
+    }
+
+    private synchronized Map<Short, String> dictionaryFor(int index, File segment) throws IOException {
+        if (index == segmentIndex) {
+            Map<Short, String> names = new HashMap<>();
+            dictionary.forEach((name, id) -> names.put(id, name));
+            return names;
+        }
+        Map<Short, String> names = dictionaryCache.get(index);
+        if (names == null) {
+            names = new HashMap<>();
+            readSegment(segment, names, (entry, offset) -> {
+            });
+            dictionaryCache.put(index, names);
+        }
+        return names;
+    }
+
+    private File segmentFile(int index) {
+        return new File(directory, String.format("%s%06d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    @Override
+    public List<LogCaptureHandler.LogEntry> loadRecent(int max) throws IOException {
+        List<File> segments = listSegments(directory);
+        segments.removeIf(segment -> segmentIndex(segment) >= firstOwnSegment);
+        List<List<LogCaptureHandler.LogEntry>> newestFirst = new ArrayList<>();
+        int count = 0;
+        for (int i = segments.size() - 1; i >= 0 && count < max; i--) {
+            List<LogCaptureHandler.LogEntry> entries = new ArrayList<>();
+            readSegment(segments.get(i), entries::add);
+            newestFirst.add(entries);
+            count += entries.size();
+        }
+
+        List<LogCaptureHandler.LogEntry> result = new ArrayList<>(Math.min(count, max));
+        Collections.reverse(newestFirst);
+        for (List<LogCaptureHandler.LogEntry> entries : newestFirst) {
+            result.addAll(entries);
+        }
+        return result.size() > max ? new ArrayList<>(result.subList(result.size() - max, result.size())) : result;
+    }
+
+    @Override
+    public void readAfter(long address, ObjLongConsumer<LogCaptureHandler.LogEntry> visitor) throws IOException {
+        int firstSegment = address < 0 ? 0 : (int) (address >>> 32);
+        for (File segment : listSegments(directory)) {
+            int index = segmentIndex(segment);
+            if (index < firstSegment || index >= firstOwnSegment) continue;
+            long segmentAddress = (long) index << 32;
+            readSegment(segment, new HashMap<>(), (entry, offset) -> {
+                if ((segmentAddress | offset) > address) visitor.accept(entry, segmentAddress | offset);
+            });
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (channel != null) channel.force(false);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * @return the segment files of a directory, oldest first
+     */
+    public static List<File> listSegments(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) return new ArrayList<>();
+        List<File> segments = new ArrayList<>(Arrays.asList(files));
+        segments.sort(Comparator.comparingInt(BinaryLogStore::segmentIndex));
+        return segments;
+    }
+
+    /**
+     * Read every valid entry of a segment. Reading stops at the first truncated or corrupt record.
+     */
+    public static void readSegment(File segment, Consumer<LogCaptureHandler.LogEntry> consumer) throws IOException {
+        readSegment(segment, new HashMap<>(), (entry, offset) -> consumer.accept(entry));
+    }
+
+    /**
+     * @param consumer Receives each entry with its offset in the segment
+     */
+    private static void readSegment(File segment, Map<Short, String> names, ObjLongConsumer<LogCaptureHandler.LogEntry> consumer) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                throw new IOException("Not a log segment: " + segment);
+            }
+            CRC32 crc = new CRC32();
+            byte[] record = new byte[256];
+            long offset = 5;
+            while (true) {
+                long recordOffset = offset;
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                if (length <= 0 || length > MAX_RECORD_LENGTH) return;
+                if (record.length < length) record = new byte[Math.max(length, record.length * 2)];
+                try {
+                    in.readFully(record, 0, length);
+                    crc.reset();
+                    crc.update(record, 0, length);
+                    if ((int) crc.getValue() != in.readInt()) return;
+                } catch (EOFException e) {
+                    return;
+                }
+                offset += length + 8;
+
+                ByteBuffer buffer = ByteBuffer.wrap(record, 0, length);
+                byte type = buffer.get();
+                if (type == TYPE_DICTIONARY) {
+                    short id = buffer.getShort();
+                    names.put(id, new String(record, buffer.position(), buffer.remaining(), StandardCharsets.UTF_8));
+                } else if (type == TYPE_ENTRY) {
+                    long millis = buffer.getLong();
+                    String level = names.get(buffer.getShort());
+                    String source = names.get(buffer.getShort());
+                    String message = new String(record, buffer.position(), buffer.remaining(), StandardCharsets.UTF_8);
+                    consumer.accept(new LogCaptureHandler.LogEntry(message, level, source, Instant.ofEpochMilli(millis)), recordOffset);
+                }
+            }
+        }
+    }
+
+    private static int segmentIndex(File segment) {
+        String name = segment.getName();
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void openNextSegment() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        segmentIndex++;
+        File segment = segmentFile(segmentIndex);
+        channel = FileChannel.open(segment.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        dictionary.clear();
+
+        ByteBuffer header = ByteBuffer.allocate(5);
+        header.putInt(MAGIC).put(VERSION).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+    }
+
+    private short dictionaryId(String name) throws IOException {
+        if (name == null) return -1;
+        Short id = dictionary.get(name);
+        if (id != null) return id;
+        if (dictionary.size() >= Short.MAX_VALUE) return -1;
+
+        short newId = (short) dictionary.size();
+        recordBuffer.reset();
+        DataOutputStream out = new DataOutputStream(recordBuffer);
+        out.writeByte(TYPE_DICTIONARY);
+        out.writeShort(newId);
+        out.write(name.getBytes(StandardCharsets.UTF_8));
+        writeRecord();
+        dictionary.put(name, newId);
+        return newId;
+    }
+
+    private void writeRecord() throws IOException {
+        byte[] payload = recordBuffer.toByteArray();
+        crc.reset();
+        crc.update(payload, 0, payload.length);
+
+        ByteBuffer buffer = ByteBuffer.allocate(payload.length + 8);
+        buffer.putInt(payload.length).put(payload).putInt((int) crc.getValue()).flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -1,6 +1,10 @@
 package io.github.ariuan.connectorPlugin;
 
+import net.kyori.adventure.audience.MessageType;
+import net.kyori.adventure.chat.ChatType;
+import net.kyori.adventure.identity.Identity;
 import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
 import org.bukkit.Bukkit;
 import org.bukkit.command.ConsoleCommandSender;
 import org.bukkit.conversations.Conversation;
@@ -11,24 +15,78 @@ import org.bukkit.Server;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 
+/**
+ * Console sender that records what a command sends back, both legacy strings and Adventure components.
+ * Messages are kept as components and only serialized when the output is read.
+ */
 public class CapturingConsoleSender implements ConsoleCommandSender {
 
-    private final StringBuilder output = new StringBuilder();
+    private final List<Component> messages = new ArrayList<>();
     private final ConsoleCommandSender console = Bukkit.getConsoleSender();
+    private volatile long lastMessageNanos;
 
+    /**
+     * @return the messages so far, in the order they were sent
+     */
+    public synchronized List<Component> getMessages() {
+        return new ArrayList<>(messages);
+    }
+
+    /**
+     * @return the messages as plain text, one per line
+     */
     public String getOutput() {
+        return toPlainText(getMessages());
+    }
+
+    public static String toPlainText(List<Component> messages) {
+        StringBuilder output = new StringBuilder();
+        for (Component message : messages) {
+            output.append(PlainTextComponentSerializer.plainText().serialize(message)).append("\n");
+        }
         return output.toString();
     }
 
+    /**
+     * @return System.nanoTime() of the last message, or 0 if nothing was sent yet
+     */
+    public long getLastMessageNanos() {
+        return lastMessageNanos;
+    }
+
+    private synchronized void capture(Component message) {
+        messages.add(message);
+        lastMessageNanos = System.nanoTime();
+    }
+
     @Override
     public void sendMessage(@NotNull String message) {
-        output.append(message).append("\n");
+        capture(Component.text(message));
+        console.sendMessage(message);
+    }
+
+    @Override
+    public void sendMessage(@NotNull Component message) {
+        capture(message);
         console.sendMessage(message);
     }
 
+    @Override
+    public void sendMessage(@NotNull Component message, ChatType.@NotNull Bound boundChatType) {
+        sendMessage(message);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void sendMessage(@NotNull Identity source, @NotNull Component message, @NotNull MessageType type) {
+        sendMessage(message);
+    }
+
     @Override
     public void sendMessage(String[] messages) {
         for (String msg : messages) {
@@ -43,7 +101,7 @@ public class CapturingConsoleSender implements ConsoleCommandSender {
 
     @Override
     public void sendMessage(@Nullable UUID sender, @NotNull String... messages) {
-
+        sendMessage(messages);
     }
 
     // Delegate other methods to real console
@@ -0,0 +1,109 @@
+package io.github.ariuan.connectorPlugin;
+
+import io.github.ariuan.connectorPlugin.JsonResponses.CommandResult;
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Runs console commands for /runCommand and decides when their output is complete
+ */
+public class CommandRunner {
+    /**
+     * When a command's output is considered complete
+     */
+    public enum Completion {
+        // As soon as the command returns, in the same tick
+        RETURN,
+        // Once nothing was sent or logged for the quiet period, checked every tick
+        QUIET,
+        // After a fixed number of ticks
+        TICKS;
+
+        /**
+         * @throws IllegalArgumentException for an unknown mode
+         */
+        public static Completion parse(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid completion " + value + ", expected return, quiet or ticks");
+            }
+        }
+    }
+
+    private final Plugin plugin;
+    private final Logger logger;
+    private final Completion defaultCompletion;
+    private final long defaultQuietMillis;
+    private final long defaultTicks;
+    private final long maxWaitNanos;
+
+    /**
+     * @param maxWaitMillis Upper bound for the quiet period mode, for commands that keep logging
+     */
+    public CommandRunner(Plugin plugin, Logger logger, Completion defaultCompletion, long defaultQuietMillis, long defaultTicks, long maxWaitMillis) {
+        this.plugin = plugin;
+        this.logger = logger;
+        this.defaultCompletion = defaultCompletion;
+        this.defaultQuietMillis = defaultQuietMillis;
+        this.defaultTicks = defaultTicks;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    }
+
+    /**
+     * Options of one command run, null fields fall back to the configured defaults
+     *
+     * @param components Also return the output as serialized Adventure components
+     */
+    public record Options(Completion completion, Long quietMillis, Long ticks, boolean components) {
+    }
+
+    /**
+     * Dispatch a console command and complete the future with its output, must be called on the main thread
+     */
+    public void run(String command, Options options, CompletableFuture<CommandResult> future) {
+        Completion completion = options.completion() != null ? options.completion() : defaultCompletion;
+        CapturingConsoleSender sender = new CapturingConsoleSender();
+        LogCapture logCapture = new LogCapture();
+        logger.addHandler(logCapture);
+        long start = System.nanoTime();
+        boolean success;
+        try {
+            success = Bukkit.dispatchCommand(sender, command);
+        } catch (RuntimeException e) {
+            logger.removeHandler(logCapture);
+            future.completeExceptionally(e);
+            throw e;
+        }
+        Runnable finish = () -> {
+            logger.removeHandler(logCapture);
+            future.complete(new CommandResult(success, sender.getMessages(), logCapture.getCapturedOutput().trim(), options.components(), null));
+        };
+
+        switch (completion) {
+            case RETURN -> finish.run();
+            case TICKS -> {
+                long ticks = options.ticks() != null ? options.ticks() : defaultTicks;
+                Bukkit.getScheduler().runTaskLater(plugin, finish, Math.max(1, ticks));
+            }
+            case QUIET -> {
+                long quietNanos = TimeUnit.MILLISECONDS.toNanos(options.quietMillis() != null ? options.quietMillis() : defaultQuietMillis);
+                BukkitTask[] check = new BukkitTask[1];
+                check[0] = Bukkit.getScheduler().runTaskTimer(plugin, () -> {
+                    long now = System.nanoTime();
+                    long lastActivity = Math.max(start, Math.max(sender.getLastMessageNanos(), logCapture.getLastPublishNanos()));
+                    if (now - lastActivity >= quietNanos || now - start >= maxWaitNanos || future.isDone()) {
+                        check[0].cancel();
+                        finish.run();
+                    }
+                }, 1, 1);
+            }
+        }
+    }
+}
@@ -1,30 +1,52 @@
 package io.github.ariuan.connectorPlugin;
 
+import com.google.gson.JsonObject;
+import io.papermc.paper.event.player.AsyncChatEvent;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
+import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
 import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.entity.PlayerDeathEvent;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Handler;
+import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
 
 public class ConnectorPlugin extends JavaPlugin implements Listener {
     private HttpServer httpServer;
     private static ConnectorPlugin instance;
     private LogCaptureHandler logCaptureHandler;
+    private Logger captureLogger;
     private PlayerVerificationManager verificationManager;
     private PlayerRestrictionListener restrictionListener;
+    private PlayerFreezer freezer;
     private ShutdownManager shutdownManager;
+    private BackendClient backendClient;
+    private MainThreadExecutor mainThread;
+    private SharedVerificationTable sharedVerificationTable;
+    private StatusMonitor statusMonitor;
+    private HibernationManager hibernationManager;
+    private EventPublisher eventPublisher;
+    private boolean publishChat;
 
     @Override
     public void onEnable() {
@@ -32,42 +54,155 @@ public class ConnectorPlugin extends JavaPlugin implements Listener {
 
         // Save default config
         saveDefaultConfig();
+        // JFR settings for the plugin's events, for use with JFR.start
+        if (!new File(getDataFolder(), "connector.jfc").exists()) {
+            saveResource("connector.jfc", false);
+        }
 
         // Initialize verification manager
         File customConfigFile = new File(getDataFolder(), "config.yml");
         FileConfiguration customConfig = YamlConfiguration.loadConfiguration(customConfigFile);
+        List<String> apiUrls = new ArrayList<>(customConfig.getStringList("api-urls"));
         String apiUrl = customConfig.getString("api-url");
+        if (apiUrls.isEmpty() && apiUrl != null) {
+            apiUrls.add(apiUrl);
+        }
+        String healthPath = customConfig.getString("backend-health-path", "/ping");
+        long healthCheckSeconds = customConfig.getLong("backend-health-check-seconds", 10L);
+        double hedgePercentile = customConfig.getDouble("hedge-percentile", 0.95);
         long periodPerRequest = customConfig.getLong("period-per-request", 36000L);
-        if (apiUrl == null) {
-            throw new IllegalStateException("Please set api-url");
+        String apiToken = customConfig.getString("api-token", "");
+        int compressionThreshold = customConfig.getInt("compression-threshold-bytes", 1024);
+        int httpMaxConcurrency = customConfig.getInt("http-max-concurrency", 16);
+        int httpReservedConcurrency = customConfig.getInt("http-reserved-concurrency", 4);
+        List<String> httpReservedRoutes = customConfig.isList("http-reserved-routes") ? customConfig.getStringList("http-reserved-routes") : List.of("/ping", "/shuttingDown");
+        Map<String, AdmissionControl.RouteLimit> httpRouteLimits = new HashMap<>();
+        ConfigurationSection routeLimitsSection = customConfig.getConfigurationSection("http-route-limits");
+        if (routeLimitsSection != null) {
+            for (String route : routeLimitsSection.getKeys(false)) {
+                ConfigurationSection limit = routeLimitsSection.getConfigurationSection(route);
+                if (limit == null) continue;
+                httpRouteLimits.put(route, new AdmissionControl.RouteLimit(limit.getInt("concurrency", 0), limit.getDouble("rate-per-second", 0), limit.getDouble("burst", 1)));
+            }
+        }
+        String logFormat = customConfig.getString("log-format", "json");
+        long logSegmentBytes = customConfig.getLong("log-segment-bytes", 16L * 1024 * 1024);
+        boolean logSearch = customConfig.getBoolean("log-search", false);
+        int logIndexSegmentEntries = customConfig.getInt("log-index-segment-entries", 10000);
+        String logCaptureScope = customConfig.getString("log-capture-scope", "plugin");
+        double logRatePerLogger = customConfig.getDouble("log-rate-limit-per-second", 50);
+        double logBurstPerLogger = customConfig.getDouble("log-rate-limit-burst", 200);
+        double logRateGlobal = customConfig.getDouble("log-rate-limit-global-per-second", 500);
+        long mainThreadBudgetMicros = customConfig.getLong("main-thread-budget-micros", 2000L);
+        int mainThreadQueueCapacity = customConfig.getInt("main-thread-queue-capacity", 1000);
+        CommandRunner.Completion commandCompletion = CommandRunner.Completion.parse(customConfig.getString("run-command-completion", "return"));
+        long commandQuietMillis = customConfig.getLong("run-command-quiet-millis", 100L);
+        long commandTicks = customConfig.getLong("run-command-ticks", 2L);
+        long commandMaxWaitMillis = customConfig.getLong("run-command-max-wait-millis", 5000L);
+        long shutdownDrainSeconds = customConfig.getLong("shutdown-drain-seconds", 10L);
+        long preShutdownSaveBudgetMicros = customConfig.getLong("pre-shutdown-save-budget-micros", 5000L);
+        long leaseRenewMargin = customConfig.getLong("lease-renew-margin-seconds", 60L);
+        long heartbeatMin = customConfig.getLong("heartbeat-min-seconds", 30L);
+        long heartbeatMax = customConfig.getLong("heartbeat-max-seconds", 3600L);
+        boolean preLoginVerification = customConfig.getBoolean("pre-login-verification", true);
+        boolean denyUnverifiedAtLogin = customConfig.getBoolean("deny-unverified-at-login", false);
+        String sharedVerificationDirectory = customConfig.getString("shared-verification-directory", "");
+        int sharedVerificationSlots = customConfig.getInt("shared-verification-slots", 65536);
+        long sharedVerificationTtl = customConfig.getLong("shared-verification-ttl-seconds", 300L);
+        boolean eventStream = customConfig.getBoolean("event-stream", false);
+        publishChat = customConfig.getBoolean("event-stream-chat", false);
+        int eventStreamCapacity = customConfig.getInt("event-stream-capacity", 10000);
+        int eventStreamBatchSize = customConfig.getInt("event-stream-batch-size", 100);
+        long eventStreamFlushMillis = customConfig.getLong("event-stream-flush-millis", 1000L);
+        boolean hibernation = customConfig.getBoolean("hibernation", false);
+        long hibernationShutdownMinutes = customConfig.getLong("hibernation-shutdown-minutes", 30L);
+        PlayerFreezer.FreezeMode freezeMode = PlayerFreezer.FreezeMode.parse(customConfig.getString("freeze-mode", "attribute"));
+        if (apiUrls.isEmpty()) {
+            throw new IllegalStateException("Please set api-url or api-urls");
+        }
+        mainThread = new MainThreadExecutor(this, mainThreadBudgetMicros, mainThreadQueueCapacity);
+        mainThread.start();
+        backendClient = new BackendClient(getLogger(), apiUrls, healthPath, healthCheckSeconds, hedgePercentile);
+        freezer = new PlayerFreezer(this, freezeMode);
+        if (eventStream) {
+            eventPublisher = new EventPublisher(getLogger(), backendClient, Bukkit.getServer().getPort(), eventStreamCapacity, eventStreamBatchSize, eventStreamFlushMillis);
+            eventPublisher.start();
         }
-        verificationManager = new PlayerVerificationManager(this, apiUrl, periodPerRequest);
+        if (sharedVerificationDirectory != null && !sharedVerificationDirectory.isBlank()) {
+            try {
+                sharedVerificationTable = SharedVerificationTable.open(new File(sharedVerificationDirectory), sharedVerificationSlots);
+                getLogger().info("Sharing verifications through " + sharedVerificationDirectory + " (" + sharedVerificationTable.countVerified() + "/"
+                        + sharedVerificationTable.getSlots() + " slots verified)");
+            } catch (IOException e) {
+                getLogger().warning("Error opening shared verification table, verifications are not shared: " + e.getMessage());
+            }
+        }
+        verificationManager = new PlayerVerificationManager(this, freezer, backendClient, mainThread, periodPerRequest, leaseRenewMargin, heartbeatMin, heartbeatMax,
+                preLoginVerification, denyUnverifiedAtLogin, sharedVerificationTable, sharedVerificationTtl, eventPublisher);
         // Initialize restriction listener
-        restrictionListener = new PlayerRestrictionListener(verificationManager);
-        // Initialize shutdown manager
-        shutdownManager = new ShutdownManager(this, apiUrl);
+        restrictionListener = new PlayerRestrictionListener(verificationManager, freezer);
+        // Initialize shutdown manager, the drains run before the server stops
+        ShutdownDrainCoordinator drainCoordinator = new ShutdownDrainCoordinator(getLogger(), shutdownDrainSeconds * 1000);
+        drainCoordinator.register("sessions", verificationManager::flushSessions);
+        if (eventPublisher != null) {
+            drainCoordinator.register("events", eventPublisher::flush);
+        }
+        shutdownManager = new ShutdownManager(this, backendClient, drainCoordinator, preShutdownSaveBudgetMicros);
+        statusMonitor = new StatusMonitor(this, verificationManager, shutdownManager, backendClient);
+        statusMonitor.start();
 
-        File logFile = new File(getDataFolder(), "log.txt");
-        try {
-            if (!logFile.exists() && logFile.createNewFile()) {
-                getLogger().info("Created new log file");
+        LogStore logStore;
+        File indexDirectory;
+        if (logFormat.equalsIgnoreCase("binary")) {
+            indexDirectory = new File(getDataFolder(), "logs");
+            try {
+                logStore = new BinaryLogStore(indexDirectory, logSegmentBytes);
+            } catch (IOException e) {
+                throw new IllegalStateException("Error opening binary log: " + e.getMessage(), e);
+            }
+        } else {
+            File logFile = new File(getDataFolder(), "log.txt");
+            try {
+                if (!logFile.exists() && logFile.createNewFile()) {
+                    getLogger().info("Created new log file");
+                }
+            } catch (IOException e) {
+                getLogger().warning("Error creating log file: " + e.getMessage());
+            }
+            logStore = new JsonLinesLogStore(logFile);
+            indexDirectory = new File(getDataFolder(), "log-index");
+        }
+
+        LogSearchIndex searchIndex = null;
+        if (logSearch) {
+            try {
+                searchIndex = new LogSearchIndex(indexDirectory, logStore, logIndexSegmentEntries, getLogger());
+            } catch (IOException e) {
+                getLogger().warning("Error opening log search index, search is disabled: " + e.getMessage());
             }
-        } catch (IOException e) {
-            getLogger().warning("Error creating log file: " + e.getMessage());
         }
 
-        logCaptureHandler = new LogCaptureHandler(logFile);
+        logCaptureHandler = new LogCaptureHandler(logStore, searchIndex, logRatePerLogger, logBurstPerLogger, logRateGlobal);
         Handler[] handlers = getLogger().getHandlers();
         if (handlers.length > 0 && handlers[0].getFormatter() != null) {
             logCaptureHandler.setFormatter(handlers[0].getFormatter());
         } else {
             logCaptureHandler.setFormatter(new SimpleFormatter());
         }
-        getLogger().addHandler(logCaptureHandler);
+        // The root logger sees every plugin and Bukkit logger, not just ours
+        captureLogger = logCaptureScope.equalsIgnoreCase("server") ? Logger.getLogger("") : getLogger();
+        captureLogger.addHandler(logCaptureHandler);
+        drainCoordinator.register("logs", () -> CompletableFuture.runAsync(logCaptureHandler::flush));
+        if (hibernation) {
+            hibernationManager = new HibernationManager(this, shutdownManager, freezer, backendClient, logCaptureHandler, hibernationShutdownMinutes * 60 * 20);
+        }
 
         try {
-            httpServer = new HttpServer(6001, logCaptureHandler);
+            CommandRunner commandRunner = new CommandRunner(this, getLogger(), commandCompletion, commandQuietMillis, commandTicks, commandMaxWaitMillis);
+            AdmissionControl admissionControl = new AdmissionControl(httpMaxConcurrency, httpReservedConcurrency, Set.copyOf(httpReservedRoutes), httpRouteLimits);
+            httpServer = new HttpServer(6001, getLogger(), logCaptureHandler, mainThread, commandRunner, statusMonitor, admissionControl, apiToken, compressionThreshold);
             getLogger().info("HTTP server started on port: " + 6001);
+            drainCoordinator.register("jobs", httpServer::drainJobs, httpServer::abortJobs);
         } catch (IOException e) {
             getLogger().warning("Error creating HTTP server: " + e.getMessage());
         }
@@ -77,7 +212,7 @@ public class ConnectorPlugin extends JavaPlugin implements Listener {
         // Register commands
         this.getCommand("cancelstop").setExecutor(new CancelStopCommand(this));
 
-        getLogger().info("Player verification system enabled with API URL: " + apiUrl);
+        getLogger().info("Player verification system enabled with API URLs: " + String.join(", ", apiUrls));
     }
 
     public static ConnectorPlugin getInstance() {
@@ -88,6 +223,10 @@ public class ConnectorPlugin extends JavaPlugin implements Listener {
         return shutdownManager;
     }
 
+    public PlayerVerificationManager getVerificationManager() {
+        return verificationManager;
+    }
+
     public boolean cancelShutdown() {
         return shutdownManager.cancelShutdown();
     }
@@ -104,15 +243,32 @@ public class ConnectorPlugin extends JavaPlugin implements Listener {
         return shutdownManager.hasScheduledShutdown();
     }
 
+    @EventHandler
+    public void onAsyncPlayerPreLogin(AsyncPlayerPreLoginEvent event) {
+        // Start waking up while the player is still logging in, so the world is ready when they join
+        if (hibernationManager != null && hibernationManager.isHibernating()) {
+            mainThread.execute(MainThreadExecutor.Lane.CRITICAL, hibernationManager::wake);
+        }
+        // Runs off the main thread, so the backend call doesn't block the server
+        verificationManager.handlePreLogin(event);
+    }
+
     @EventHandler
     public void onPlayerJoin(PlayerJoinEvent event) {
         event.getPlayer().sendMessage(Component.text("Hello, " + event.getPlayer().getName() + "!"));
 
+        if (hibernationManager != null) {
+            hibernationManager.wake();
+        }
         // Cancel grace period shutdown if a player rejoins
         shutdownManager.handlePlayerRejoin();
 
         // Start player verification
         verificationManager.verifyPlayer(event.getPlayer());
+
+        if (eventPublisher != null) {
+            eventPublisher.publish(EventPublisher.event("join", event.getPlayer().getUniqueId(), event.getPlayer().getName()));
+        }
     }
 
     @EventHandler
@@ -122,11 +278,20 @@ public class ConnectorPlugin extends JavaPlugin implements Listener {
         // Stop monitoring when player quits
         verificationManager.stopMonitoring(event.getPlayer());
 
+        if (eventPublisher != null) {
+            eventPublisher.publish(EventPublisher.event("quit", event.getPlayer().getUniqueId(), event.getPlayer().getName()));
+        }
+
         Bukkit.getScheduler().runTask(getInstance(), () -> {
             int onlinePlayersCount = Bukkit.getOnlinePlayers().size();
             if (onlinePlayersCount == 0) {
-                // Trigger grace period shutdown when all players leave
-                shutdownManager.shutdown(ShutdownManager.GRACE_PERIOD_TICKS, true);
+                if (hibernationManager != null) {
+                    // Hibernate instead, the server shuts down after the longer idle period
+                    hibernationManager.hibernate();
+                } else {
+                    // Trigger grace period shutdown when all players leave
+                    shutdownManager.shutdown(ShutdownManager.GRACE_PERIOD_TICKS, true);
+                }
             }
         });
     }
@@ -136,6 +301,24 @@ public class ConnectorPlugin extends JavaPlugin implements Listener {
         Player player = event.getEntity();
         var position = player.getLocation();
         Bukkit.broadcast(Component.text("Grab " + player.getName() + " items at " + position.getBlockX() + ", " + position.getBlockY() + ", " + position.getBlockZ() + "!"));
+
+        if (eventPublisher != null) {
+            JsonObject death = EventPublisher.event("death", player.getUniqueId(), player.getName());
+            death.addProperty("world", position.getWorld().getName());
+            death.addProperty("x", position.getBlockX());
+            death.addProperty("y", position.getBlockY());
+            death.addProperty("z", position.getBlockZ());
+            eventPublisher.publish(death);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerChat(AsyncChatEvent event) {
+        // Runs off the main thread, publishing only queues the event
+        if (eventPublisher == null || !publishChat) return;
+        JsonObject chat = EventPublisher.event("chat", event.getPlayer().getUniqueId(), event.getPlayer().getName());
+        chat.addProperty("message", PlainTextComponentSerializer.plainText().serialize(event.message()));
+        eventPublisher.publish(chat);
     }
 
     @Override
@@ -143,11 +326,34 @@ public class ConnectorPlugin extends JavaPlugin implements Listener {
         if (verificationManager != null) {
             verificationManager.cleanup();
         }
+        if (freezer != null) {
+            freezer.cleanup();
+        }
         if (httpServer != null) {
             httpServer.stop();
         }
+        if (mainThread != null) {
+            mainThread.stop();
+        }
+        if (statusMonitor != null) {
+            statusMonitor.stop();
+        }
+        if (eventPublisher != null) {
+            eventPublisher.stop();
+        }
+        if (backendClient != null) {
+            backendClient.shutdown();
+        }
+        if (sharedVerificationTable != null) {
+            try {
+                sharedVerificationTable.close();
+            } catch (IOException e) {
+                getLogger().warning("Error closing shared verification table: " + e.getMessage());
+            }
+        }
         if (logCaptureHandler != null) {
-            getLogger().removeHandler(logCaptureHandler);
+            captureLogger.removeHandler(logCaptureHandler);
+            logCaptureHandler.close();
         }
     }
 }
@@ -0,0 +1,184 @@
+package io.github.ariuan.connectorPlugin;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Pushes player events (joins, quits, deaths, verification results and optionally chat) to the backend's /events endpoint.
+ * Events are buffered in a bounded queue and sent in batches once a batch is full or its oldest event waited the flush interval.
+ * <p>
+ * Every event gets a sequence number that increases within a stream, and each plugin start is a new stream.
+ * A failed batch is retried until the backend accepts it, so delivery is at-least-once and the backend deduplicates
+ * by stream and sequence number. Events that don't fit into the queue are dropped, which shows up as a gap in the sequence.
+ */
+public class EventPublisher {
+    private static final long MIN_RETRY_DELAY_MILLIS = 1000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 30 * 1000;
+
+    private final Logger logger;
+    private final BackendClient backendClient;
+    private final int serverPort;
+    private final int batchSize;
+    private final long flushNanos;
+    private final String streamId = UUID.randomUUID().toString();
+    private final BlockingQueue<JsonObject> queue;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    // Completed by the sender once everything queued before the flush was sent
+    private final List<CompletableFuture<Void>> flushes = new CopyOnWriteArrayList<>();
+    private final Thread sender;
+    private volatile boolean stopped;
+    private boolean missingEndpointLogged;
+
+    /**
+     * @param capacity    Events buffered before new ones are dropped
+     * @param batchSize   Events sent in one request at most
+     * @param flushMillis How long an event waits for its batch to fill up
+     */
+    public EventPublisher(Logger logger, BackendClient backendClient, int serverPort, int capacity, int batchSize, long flushMillis) {
+        this.logger = logger;
+        this.backendClient = backendClient;
+        this.serverPort = serverPort;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.sender = new Thread(this::run, "ConnectorEvents");
+        this.sender.setDaemon(true);
+    }
+
+    public void start() {
+        sender.start();
+    }
+
+    public void stop() {
+        stopped = true;
+        sender.interrupt();
+    }
+
+    /**
+     * Create an event about a player, more fields can be added before it is published
+     */
+    public static JsonObject event(String type, UUID uuid, String playerName) {
+        JsonObject event = new JsonObject();
+        event.addProperty("type", type);
+        event.addProperty("uuid", uuid.toString());
+        event.addProperty("playerName", playerName);
+        return event;
+    }
+
+    /**
+     * Queue an event, never blocks. Can be called from any thread.
+     */
+    public synchronized void publish(JsonObject event) {
+        // Numbered before it is queued, so a dropped event leaves a gap the backend can see
+        event.addProperty("seq", sequence.incrementAndGet());
+        event.addProperty("time", System.currentTimeMillis());
+        if (!queue.offer(event)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Send everything queued so far without waiting for the flush interval
+     *
+     * @return a future that completes once the backend accepted it
+     */
+    public CompletableFuture<Void> flush() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        flushes.add(future);
+        sender.interrupt();
+        return future;
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    private void run() {
+        List<JsonObject> batch = new ArrayList<>(batchSize);
+        long batchDeadline = 0;
+        while (!stopped) {
+            try {
+                if (batch.isEmpty()) {
+                    if (!flushes.isEmpty() && queue.isEmpty()) {
+                        completeFlushes();
+                    }
+                    JsonObject first = queue.poll(flushNanos, TimeUnit.NANOSECONDS);
+                    if (first == null) continue;
+                    batch.add(first);
+                    batchDeadline = System.nanoTime() + flushNanos;
+                }
+                queue.drainTo(batch, batchSize - batch.size());
+                long wait = batchDeadline - System.nanoTime();
+                if (batch.size() < batchSize && wait > 0 && flushes.isEmpty()) {
+                    JsonObject next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                    if (next != null) batch.add(next);
+                    continue;
+                }
+                send(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                // Woken up by flush() or stop(), the loop checks which
+                Thread.interrupted();
+            }
+        }
+    }
+
+    /**
+     * Post a batch until the backend accepts it, backing off between attempts
+     */
+    private void send(List<JsonObject> batch) throws InterruptedException {
+        JsonArray events = new JsonArray(batch.size());
+        batch.forEach(events::add);
+        JsonObject json = new JsonObject();
+        json.addProperty("serverPort", serverPort);
+        json.addProperty("stream", streamId);
+        json.addProperty("dropped", dropped.get());
+        json.add("events", events);
+
+        long delay = MIN_RETRY_DELAY_MILLIS;
+        while (!stopped) {
+            try {
+                BackendClient.BackendResponse response = backendClient.post("/events", json);
+                if (response.isOk()) return;
+                if (response.code() == 404) {
+                    // Retrying can't help, an older backend would only be flooded
+                    if (!missingEndpointLogged) {
+                        missingEndpointLogged = true;
+                        logger.warning("Backend has no /events endpoint, events are dropped");
+                    }
+                    return;
+                }
+                logger.warning("Error sending " + batch.size() + " events: /events returned " + response.code());
+            } catch (IOException e) {
+                logger.warning("Error sending " + batch.size() + " events: " + e.getMessage());
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                // A flush retries right away instead of waiting out the backoff
+                if (stopped) throw e;
+            }
+            delay = Math.min(MAX_RETRY_DELAY_MILLIS, delay * 2);
+        }
+    }
+
+    private void completeFlushes() {
+        for (CompletableFuture<Void> future : flushes) {
+            future.complete(null);
+            flushes.remove(future);
+        }
+    }
+}
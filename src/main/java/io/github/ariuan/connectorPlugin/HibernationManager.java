@@ -0,0 +1,110 @@
+package io.github.ariuan.connectorPlugin;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.plugin.Plugin;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Puts an empty server into a low-cost idle state instead of stopping it, so the next player doesn't wait for a cold boot.
+ * While hibernating, chunks outside the spawn area are unloaded, view and simulation distance are lowered, periodic
+ * background checks are paused and the in-memory log window is trimmed. The server only shuts down after a longer idle period.
+ * All methods must be called on the main thread.
+ */
+public class HibernationManager {
+    private static final int HIBERNATION_VIEW_DISTANCE = 2;
+    private static final int HIBERNATION_SIMULATION_DISTANCE = 2;
+    // Chunks within this radius of the spawn chunk stay loaded so a joining player has terrain immediately
+    private static final int SPAWN_CHUNK_RADIUS = 2;
+    private static final int RETAINED_LOG_ENTRIES = 100;
+
+    private final Plugin plugin;
+    private final ShutdownManager shutdownManager;
+    private final PlayerFreezer freezer;
+    private final BackendClient backendClient;
+    private final LogCaptureHandler logCaptureHandler;
+    private final long idleShutdownTicks;
+    // View and simulation distance of each world before hibernating, keyed by world UID
+    private final Map<UUID, int[]> savedDistances = new HashMap<>();
+    private volatile boolean hibernating;
+
+    /**
+     * @param idleShutdownTicks Ticks of hibernation before the server shuts down
+     */
+    public HibernationManager(Plugin plugin, ShutdownManager shutdownManager, PlayerFreezer freezer, BackendClient backendClient,
+                              LogCaptureHandler logCaptureHandler, long idleShutdownTicks) {
+        this.plugin = plugin;
+        this.shutdownManager = shutdownManager;
+        this.freezer = freezer;
+        this.backendClient = backendClient;
+        this.logCaptureHandler = logCaptureHandler;
+        this.idleShutdownTicks = idleShutdownTicks;
+    }
+
+    public boolean isHibernating() {
+        return hibernating;
+    }
+
+    /**
+     * Enter hibernation and schedule the idle shutdown, does nothing if already hibernating
+     */
+    public void hibernate() {
+        if (hibernating) return;
+        hibernating = true;
+        // A rejoin cancels it like the grace period shutdown
+        shutdownManager.shutdown(idleShutdownTicks, true);
+
+        int unloaded = 0;
+        for (World world : Bukkit.getWorlds()) {
+            savedDistances.put(world.getUID(), new int[]{world.getViewDistance(), world.getSimulationDistance()});
+            world.setViewDistance(Math.min(world.getViewDistance(), HIBERNATION_VIEW_DISTANCE));
+            world.setSimulationDistance(Math.min(world.getSimulationDistance(), HIBERNATION_SIMULATION_DISTANCE));
+            unloaded += unloadOutsideSpawn(world);
+        }
+        freezer.pauseSnapshots();
+        backendClient.setHealthChecksPaused(true);
+        if (logCaptureHandler != null) {
+            logCaptureHandler.trimRecentLogs(RETAINED_LOG_ENTRIES);
+        }
+        plugin.getLogger().info("Hibernating, requested unload of " + unloaded + " chunks, shutting down after "
+                + (idleShutdownTicks / 20) + " idle seconds");
+    }
+
+    /**
+     * Leave hibernation, restoring distances and background checks, does nothing if not hibernating.
+     * The idle shutdown is cancelled separately by {@link ShutdownManager#handlePlayerRejoin()}.
+     */
+    public void wake() {
+        if (!hibernating) return;
+        hibernating = false;
+        for (World world : Bukkit.getWorlds()) {
+            int[] distances = savedDistances.get(world.getUID());
+            if (distances == null) continue;
+            world.setViewDistance(distances[0]);
+            world.setSimulationDistance(distances[1]);
+        }
+        savedDistances.clear();
+        freezer.resumeSnapshots();
+        backendClient.setHealthChecksPaused(false);
+        plugin.getLogger().info("Woke up from hibernation");
+    }
+
+    private static int unloadOutsideSpawn(World world) {
+        Location spawn = world.getSpawnLocation();
+        int spawnX = spawn.getBlockX() >> 4;
+        int spawnZ = spawn.getBlockZ() >> 4;
+        int count = 0;
+        for (Chunk chunk : world.getLoadedChunks()) {
+            if (Math.abs(chunk.getX() - spawnX) <= SPAWN_CHUNK_RADIUS && Math.abs(chunk.getZ() - spawnZ) <= SPAWN_CHUNK_RADIUS) continue;
+            if (chunk.isForceLoaded()) continue;
+            // Only queues the unload, the server saves and unloads it over the following ticks
+            if (world.unloadChunkRequest(chunk.getX(), chunk.getZ())) count++;
+        }
+        return count;
+    }
+}
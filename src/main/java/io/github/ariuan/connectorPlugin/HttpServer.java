@@ -1,83 +1,159 @@
 package io.github.ariuan.connectorPlugin;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
 import fi.iki.elonen.NanoHTTPD;
+import io.github.ariuan.connectorPlugin.JsonResponses.CommandResult;
+import io.github.ariuan.connectorPlugin.JsonResponses.JsonBody;
+import io.github.ariuan.connectorPlugin.JsonResponses.JsonContent;
 import net.kyori.adventure.text.Component;
 import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
 import org.bukkit.plugin.Plugin;
-import org.jetbrains.annotations.NotNull;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.HashMap;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 import java.util.logging.Logger;
 
 public class HttpServer extends NanoHTTPD {
+    // Upper bound for waiting on main thread work, so a request thread is never stuck when the task is dropped
+    private static final long MAIN_THREAD_TIMEOUT_SECONDS = 30;
+
     private final LogCaptureHandler logCaptureHandler;
+    private final MainThreadExecutor mainThread;
+    private final CommandRunner commandRunner;
+    private final StatusMonitor statusMonitor;
+    private final AdmissionControl admissionControl;
     private final Logger logger;
+    private final String apiToken;
+    private final int compressionThreshold;
+    // Compressed bodies of cacheable routes, keyed by route and encoding
+    private final Map<String, CompressedBody> compressedCache = new ConcurrentHashMap<>();
+    private volatile CachedLogs cachedLogs;
+    // Running /runCommand jobs, so the shutdown drain can wait for them
+    private final Set<CompletableFuture<CommandResult>> openJobs = ConcurrentHashMap.newKeySet();
+    private volatile boolean acceptingJobs = true;
 
-    public HttpServer(int port, LogCaptureHandler logCaptureHandler) throws IOException {
+    public HttpServer(int port, Logger logger, LogCaptureHandler logCaptureHandler, MainThreadExecutor mainThread, CommandRunner commandRunner, StatusMonitor statusMonitor,
+                      AdmissionControl admissionControl, String apiToken, int compressionThreshold) throws IOException {
         super(port);
         this.logCaptureHandler = logCaptureHandler;
-        this.logger = ConnectorPlugin.getInstance().getLogger();
+        this.mainThread = mainThread;
+        this.commandRunner = commandRunner;
+        this.statusMonitor = statusMonitor;
+        this.admissionControl = admissionControl;
+        this.apiToken = apiToken;
+        this.compressionThreshold = compressionThreshold;
+        this.logger = logger;
         start(SOCKET_READ_TIMEOUT, false);
         System.out.println("HTTP Server started on port " + port);
     }
 
+    /**
+     * Stop accepting /runCommand jobs
+     *
+     * @return a future that completes once the jobs that are still running have finished
+     */
+    public CompletableFuture<Void> drainJobs() {
+        acceptingJobs = false;
+        return CompletableFuture.allOf(openJobs.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * Answer the jobs that are still running with a failure, used when the shutdown drain deadline passed
+     */
+    public void abortJobs() {
+        CommandResult result = new CommandResult(false, List.of(), "", false, "Server is shutting down");
+        for (CompletableFuture<CommandResult> job : openJobs) {
+            job.complete(result);
+        }
+    }
+
     @Override
     public Response serve(IHTTPSession session) {
+        PluginEvents.HttpRequest event = new PluginEvents.HttpRequest();
+        event.begin();
+        Response response = admit(session);
+        event.finish(session.getMethod().name(), session.getUri(), response);
+        return response;
+    }
+
+    private Response admit(IHTTPSession session) {
+        if (admissionControl == null) return handle(session);
+        try (AdmissionControl.Permit ignored = admissionControl.admit(session.getUri())) {
+            return handle(session);
+        } catch (AdmissionControl.Rejected e) {
+            Response response = newFixedLengthResponse(e.isRateLimited() ? ExtraStatus.TOO_MANY_REQUESTS : ExtraStatus.SERVICE_UNAVAILABLE, MIME_PLAINTEXT, e.getMessage());
+            response.addHeader("Retry-After", String.valueOf(e.getRetryAfterSeconds()));
+            // The request body was never read, so the connection can't be reused for another request
+            response.addHeader("Connection", "close");
+            return response;
+        }
+    }
+
+    private Response handle(IHTTPSession session) {
         try {
             if (Method.POST.equals(session.getMethod())) {
                 String uri = session.getUri();
-                Map<String, String> body = new HashMap<>();
-                session.parseBody(body);
-                String rawBody = body.get("postData");
-                JsonObject json = JsonParser.parseString(rawBody).getAsJsonObject();
+                JsonRequest json = JsonRequest.read(session);
+                if (isControlRoute(uri) && !isAuthorized(session)) {
+                    return newFixedLengthResponse(Response.Status.UNAUTHORIZED, MIME_PLAINTEXT, "Unauthorized");
+                }
                 switch (uri) {
                     case "/runCommand" -> {
-                        String command = json.get("command").getAsString();
+                        String command = json.getString("command");
                         if (command == null) {
                             return newFixedLengthResponse(Response.Status.BAD_REQUEST, MIME_PLAINTEXT, "Bad Request, Missing command");
                         }
-                        CompletableFuture<String> future = new CompletableFuture<>();
-
-                        Bukkit.getScheduler().runTask(ConnectorPlugin.getInstance(), () -> {
-                            CapturingConsoleSender sender = new CapturingConsoleSender();
-                            LogCapture logCapture = new LogCapture();
-                            logger.addHandler(logCapture);
-                            boolean success = Bukkit.dispatchCommand(sender, command);
-
-                            // Some commands log later, so wait 2 ticks
-                            Bukkit.getScheduler().runTaskLater(ConnectorPlugin.getInstance(), () -> {
-                                String output = sender.getOutput();
-                                String loggerOutput = logCapture.getCapturedOutput();
-                                logger.removeHandler(logCapture);
-                                JsonObject response = new JsonObject();
-                                response.addProperty("success", success);
-                                response.addProperty("output", output.trim());
-                                response.addProperty("logger", loggerOutput.trim());
-                                future.complete(new Gson().toJson(response));
-                            }, 2L);
-                        });
-                        String result = future.get(); // Safe because it's not the main thread
-                        return newFixedLengthResponse(Response.Status.OK, "application/json", result);
+                        String completion = json.getString("completion");
+                        CommandRunner.Options options = new CommandRunner.Options(completion != null ? CommandRunner.Completion.parse(completion) : null,
+                                json.getOptionalLong("quietMillis"), json.getOptionalLong("ticks"), json.getBoolean("components"));
+                        CompletableFuture<CommandResult> future = new CompletableFuture<>();
+                        openJobs.add(future);
+                        if (!acceptingJobs) {
+                            openJobs.remove(future);
+                            return newFixedLengthResponse(ExtraStatus.SERVICE_UNAVAILABLE, MIME_PLAINTEXT, "Server is shutting down");
+                        }
+                        future.whenComplete((result, error) -> openJobs.remove(future));
+
+                        try {
+                            mainThread.execute(MainThreadExecutor.Lane.BULK, () -> commandRunner.run(command, options, future))
+                                    // A queued task failed by MainThreadExecutor.stop() never runs the command
+                                    .whenComplete((ignored, error) -> {
+                                        if (error != null) future.completeExceptionally(error);
+                                    });
+                        } catch (RejectedExecutionException e) {
+                            future.cancel(false);
+                            throw e;
+                        }
+                        CommandResult result = future.get(MAIN_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS); // Safe because it's not the main thread
+                        return json(session, writer -> JsonResponses.writeCommandResult(writer, result));
                     }
                     case "/shutdown" -> {
-                        long tickDelay = json.get("tick").getAsLong();
+                        long tickDelay = json.getLong("tick");
                         boolean successful = ConnectorPlugin.getInstance().getShutdownManager().shutdown(tickDelay, false);
-                        JsonObject response = new JsonObject();
-                        response.addProperty("success", successful);
-                        return newFixedLengthResponse(Response.Status.OK, "application/json", response.toString());
+                        return json(session, writer -> writer.beginObject().name("success").value(successful).endObject());
                     }
                     case "/register" -> {
-                        String playerName = json.get("playerName").getAsString();
-                        String uuid = json.get("uuid").getAsString();
-                        String otp = json.get("otp").getAsString();
+                        String playerName = json.getString("playerName");
+                        String uuid = json.getString("uuid");
+                        String otp = json.getString("otp");
                         var player = playerName != null ?
                                 Bukkit.getServer().getPlayerExact(playerName) :
                                 Bukkit.getServer().getPlayer(UUID.fromString(uuid));
@@ -85,89 +161,361 @@ public class HttpServer extends NanoHTTPD {
                             return newFixedLengthResponse(Response.Status.BAD_REQUEST, MIME_PLAINTEXT, "Player not found");
                         }
                         player.sendMessage(Component.text("Here's your OTP: " + otp));
-                        JsonObject response = new JsonObject();
-                        response.addProperty("success", true);
-                        response.addProperty("uuid", player.getUniqueId().toString());
-                        return newFixedLengthResponse(Response.Status.OK, "application/json", response.toString());
+                        return json(session, writer -> writer.beginObject()
+                                .name("success").value(true)
+                                .name("uuid").value(player.getUniqueId().toString())
+                                .endObject());
                     }
                     case "/registered" -> {
-                        String uuid = json.get("uuid").getAsString();
+                        String uuid = json.getString("uuid");
                         var player = Bukkit.getServer().getPlayer(UUID.fromString(uuid));
                         if (player == null) {
                             return newFixedLengthResponse(Response.Status.BAD_REQUEST, MIME_PLAINTEXT, "Player not found");
                         }
-                        ConnectorPlugin.getInstance().verifyPlayer(player);
+                        mainThread.execute(MainThreadExecutor.Lane.INTERACTIVE, () -> ConnectorPlugin.getInstance().verifyPlayer(player));
                         return newFixedLengthResponse(Response.Status.OK, MIME_PLAINTEXT, "Ok");
                     }
+                    case "/kick" -> {
+                        List<UUID> uuids = getUuids(json);
+                        if (uuids == null) {
+                            return newFixedLengthResponse(Response.Status.BAD_REQUEST, MIME_PLAINTEXT, "Bad Request, Missing or invalid uuids");
+                        }
+                        String reason = json.getString("reason") != null ? json.getString("reason") : "You have not enough credits to play on the server!";
+                        CompletableFuture<List<UUID>> future = mainThread.submit(MainThreadExecutor.Lane.CRITICAL, () -> {
+                            List<UUID> kicked = new ArrayList<>();
+                            for (UUID uuid : uuids) {
+                                var player = Bukkit.getServer().getPlayer(uuid);
+                                if (player == null) continue;
+                                player.kick(Component.text(reason));
+                                kicked.add(uuid);
+                            }
+                            logger.info("Kicked " + kicked.size() + " player(s) on backend request");
+                            return kicked;
+                        });
+                        List<UUID> kicked = future.get(MAIN_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                        return json(session, writer -> writeUuidResult(writer, "kicked", kicked));
+                    }
+                    case "/sessions/refresh" -> {
+                        List<UUID> uuids = getUuids(json);
+                        if (uuids == null) {
+                            return newFixedLengthResponse(Response.Status.BAD_REQUEST, MIME_PLAINTEXT, "Bad Request, Missing or invalid uuids");
+                        }
+                        CompletableFuture<List<UUID>> future = mainThread.submit(MainThreadExecutor.Lane.INTERACTIVE, () -> {
+                            List<UUID> refreshed = new ArrayList<>();
+                            for (UUID uuid : uuids) {
+                                var player = Bukkit.getServer().getPlayer(uuid);
+                                if (player == null) continue;
+                                ConnectorPlugin.getInstance().getVerificationManager().refreshSession(player);
+                                refreshed.add(uuid);
+                            }
+                            return refreshed;
+                        });
+                        List<UUID> refreshed = future.get(MAIN_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                        return json(session, writer -> writeUuidResult(writer, "refreshed", refreshed));
+                    }
                 }
             } else if (Method.GET.equals(session.getMethod())) {
                 String uri = session.getUri();
                 switch (uri) {
                     case "/logs": {
-                        JsonArray arr = getJsonArray();
-                        logger.info("Called logs");
-                        return newFixedLengthResponse(Response.Status.OK, "application/json", arr.toString());
+                        long version = logCaptureHandler.getVersion();
+                        CachedLogs logs = cachedLogs;
+                        if (logs == null || logs.version != version) {
+                            JsonBody body = JsonResponses.write(this::writeRecentLogs);
+                            logs = new CachedLogs(version, body.toByteArray());
+                            body.release();
+                            cachedLogs = logs;
+                        }
+                        Response response = jsonResponse(session, JsonBody.of(logs.body), "/logs", version);
+                        response.addHeader("X-Logs-Loading", String.valueOf(logCaptureHandler.isLoading()));
+                        return response;
+                    }
+                    case "/status": {
+                        StatusMonitor.Published status = statusMonitor != null ? statusMonitor.getPublished() : null;
+                        if (status == null) {
+                            return newFixedLengthResponse(ExtraStatus.SERVICE_UNAVAILABLE, MIME_PLAINTEXT, "Status is not available yet");
+                        }
+                        return jsonResponse(session, JsonBody.of(status.json()), "/status", status.snapshot().sequence());
+                    }
+                    case "/mainThread/stats": {
+                        return json(session, mainThread::writeStats);
+                    }
+                    case "/http/stats": {
+                        if (admissionControl == null) {
+                            return newFixedLengthResponse(Response.Status.NOT_FOUND, MIME_PLAINTEXT, "Admission control is disabled");
+                        }
+                        return json(session, admissionControl::writeStats);
+                    }
+                    case "/logs/stats": {
+                        Map<String, Long> byLogger = logCaptureHandler.getSuppressedByLogger();
+                        return json(session, writer -> {
+                            writer.beginObject();
+                            writer.name("suppressed").value(logCaptureHandler.getSuppressedCount());
+                            writer.name("collapsed").value(logCaptureHandler.getCollapsedCount());
+                            writer.name("suppressedByLogger").beginObject();
+                            for (Map.Entry<String, Long> entry : byLogger.entrySet()) {
+                                writer.name(entry.getKey()).value(entry.getValue());
+                            }
+                            writer.endObject();
+                            writer.endObject();
+                        });
+                    }
+                    case "/logs/search": {
+                        LogSearchIndex searchIndex = logCaptureHandler.getSearchIndex();
+                        if (searchIndex == null) {
+                            return newFixedLengthResponse(Response.Status.NOT_FOUND, MIME_PLAINTEXT, "Log search is disabled");
+                        }
+                        Map<String, String> params = session.getParms();
+                        String query = params.get("q");
+                        if (query == null || query.isBlank()) {
+                            return newFixedLengthResponse(Response.Status.BAD_REQUEST, MIME_PLAINTEXT, "Bad Request, Missing q");
+                        }
+                        long cursor = params.containsKey("cursor") ? Long.parseLong(params.get("cursor")) : Long.MAX_VALUE;
+                        int limit = params.containsKey("limit") ? Math.min(500, Integer.parseInt(params.get("limit"))) : 50;
+                        if (limit <= 0) {
+                            return newFixedLengthResponse(Response.Status.BAD_REQUEST, MIME_PLAINTEXT, "Bad Request, limit must be positive");
+                        }
+
+                        LogSearchIndex.SearchResult result = searchIndex.search(query, cursor, limit);
+                        Response response = json(session, writer -> {
+                            writer.beginObject();
+                            writer.name("results").beginArray();
+                            for (LogSearchIndex.Hit hit : result.hits()) {
+                                JsonResponses.writeSearchHit(writer, hit);
+                            }
+                            writer.endArray();
+                            if (result.nextCursor() >= 0) {
+                                writer.name("nextCursor").value(result.nextCursor());
+                            }
+                            writer.endObject();
+                        });
+                        response.addHeader("X-Search-Indexing", String.valueOf(searchIndex.isIndexing()));
+                        return response;
                     }
                     case "/players": {
-                        JsonArray arr = new JsonArray();
-                        Bukkit.getOnlinePlayers().forEach(player -> {
-                            JsonObject obj = new JsonObject();
-                            obj.addProperty("uuid", player.getUniqueId().toString());
-                            obj.addProperty("name", player.getName());
-                            arr.add(obj);
+                        return json(session, writer -> {
+                            writer.beginArray();
+                            for (Player player : Bukkit.getOnlinePlayers()) {
+                                JsonResponses.writePlayer(writer, player);
+                            }
+                            writer.endArray();
                         });
-                        return newFixedLengthResponse(Response.Status.OK, "application/json", arr.toString());
                     }
                     case "/cancelShutdown": {
                         boolean successful = ConnectorPlugin.getInstance().getShutdownManager().cancelShutdown();
-                        JsonObject response = new JsonObject();
-                        response.addProperty("success", successful);
-                        return newFixedLengthResponse(Response.Status.OK, "application/json", response.toString());
+                        return json(session, writer -> writer.beginObject().name("success").value(successful).endObject());
                     }
                     case "/shutdown": {
                         boolean successful = ConnectorPlugin.getInstance().getShutdownManager().shutdown(20 * 60, false);
-                        JsonObject response = new JsonObject();
-                        response.addProperty("success", successful);
-                        return newFixedLengthResponse(Response.Status.OK, "application/json", response.toString());
+                        return json(session, writer -> writer.beginObject().name("success").value(successful).endObject());
                     }
                     case "/shuttingDown": {
                         boolean shuttingDown = ConnectorPlugin.getInstance().getShutdownManager().hasScheduledShutdown();
-                        JsonObject response = new JsonObject();
-                        response.addProperty("result", shuttingDown);
-                        return newFixedLengthResponse(Response.Status.OK, "application/json", response.toString());
+                        return json(session, writer -> writer.beginObject().name("result").value(shuttingDown).endObject());
                     }
                     case "/ping": {
                         return newFixedLengthResponse(Response.Status.OK, MIME_PLAINTEXT, "Pong!");
                     }
                     case "/plugins": {
-                        var nameList = new JsonArray();
-                        for (Plugin plugin : Bukkit.getPluginManager().getPlugins()) {
-                            nameList.add(plugin.getName());
-                        }
-                        JsonObject response = new JsonObject();
-                        response.add("plugins", nameList);
-                        return newFixedLengthResponse(Response.Status.OK, "application/json", response.toString());
+                        Plugin[] plugins = Bukkit.getPluginManager().getPlugins();
+                        JsonBody body = JsonResponses.write(writer -> {
+                            writer.beginObject().name("plugins").beginArray();
+                            for (Plugin plugin : plugins) {
+                                writer.value(plugin.getName());
+                            }
+                            writer.endArray().endObject();
+                        });
+                        return jsonResponse(session, body, "/plugins", pluginsVersion(plugins));
                     }
                 }
                 return newFixedLengthResponse(Response.Status.NOT_FOUND, MIME_PLAINTEXT, "Not found");
             }
+        } catch (IllegalArgumentException e) {
+            return newFixedLengthResponse(Response.Status.BAD_REQUEST, MIME_PLAINTEXT, "Bad Request, " + e.getMessage());
+        } catch (RejectedExecutionException e) {
+            return newFixedLengthResponse(ExtraStatus.SERVICE_UNAVAILABLE, MIME_PLAINTEXT, e.getMessage());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RejectedExecutionException rejected) {
+                return newFixedLengthResponse(ExtraStatus.SERVICE_UNAVAILABLE, MIME_PLAINTEXT, rejected.getMessage());
+            }
+            logger.warning("Error handling " + session.getUri() + ": " + e.getCause());
+            return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, MIME_PLAINTEXT, "Internal error");
+        } catch (TimeoutException e) {
+            return newFixedLengthResponse(ExtraStatus.SERVICE_UNAVAILABLE, MIME_PLAINTEXT, "Timed out waiting for the main thread");
         } catch (Exception e) {
-            ConnectorPlugin.getInstance().getLogger().warning("Error writing log: " + e.getMessage());
+            logger.warning("Error writing log: " + e.getMessage());
             return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, MIME_PLAINTEXT, "Internal error");
         }
         return newFixedLengthResponse(Response.Status.NOT_FOUND, MIME_PLAINTEXT, "Not Found");
     }
 
-    private @NotNull JsonArray getJsonArray() {
-        LogCaptureHandler.LogEntry[] entries = logCaptureHandler.getRecentLogs();
-        JsonArray arr = new JsonArray();
-        for (LogCaptureHandler.LogEntry entry : entries) {
-            JsonObject json = new JsonObject();
-            json.addProperty("timestamp", entry.timestamp);
-            json.addProperty("message", entry.message);
-            json.addProperty("type", "server");
-            arr.add(json);
+    @Override
+    protected boolean useGzipWhenAccepted(Response r) {
+        // Encoding is negotiated in jsonResponse so compressed bodies can be cached
+        return false;
+    }
+
+    private Response json(IHTTPSession session, JsonContent content) throws IOException {
+        return jsonResponse(session, JsonResponses.write(content), null, 0);
+    }
+
+    /**
+     * Build a 200 JSON response, compressed with gzip or deflate when the client accepts it and the body is large enough
+     *
+     * @param cacheKey Route whose compressed body may be reused while version stays the same, or null to never cache
+     * @param version  Version of the body, a change invalidates the cached compressed body
+     */
+    private Response jsonResponse(IHTTPSession session, JsonBody body, String cacheKey, long version) throws IOException {
+        String encoding = body.length() >= compressionThreshold ? chooseEncoding(session.getHeaders().get("accept-encoding")) : null;
+        if (encoding == null) {
+            Response response = newFixedLengthResponse(Response.Status.OK, "application/json", body.open(), body.length());
+            response.addHeader("Vary", "Accept-Encoding");
+            return response;
+        }
+
+        byte[] compressed;
+        if (cacheKey != null) {
+            String key = cacheKey + ":" + encoding;
+            CompressedBody cached = compressedCache.get(key);
+            if (cached == null || cached.version != version) {
+                cached = new CompressedBody(version, compress(body, encoding));
+                compressedCache.put(key, cached);
+            }
+            compressed = cached.data;
+        } else {
+            compressed = compress(body, encoding);
+        }
+        body.release();
+
+        JsonBody compressedBody = JsonBody.of(compressed);
+        Response response = newFixedLengthResponse(Response.Status.OK, "application/json", compressedBody.open(), compressed.length);
+        response.addHeader("Content-Encoding", encoding);
+        response.addHeader("Vary", "Accept-Encoding");
+        return response;
+    }
+
+    /**
+     * Pick gzip or deflate from an Accept-Encoding header, ignoring encodings with q=0
+     *
+     * @return the encoding to use, or null to send the body uncompressed
+     */
+    private String chooseEncoding(String acceptEncoding) {
+        if (acceptEncoding == null) return null;
+        boolean gzip = false;
+        boolean deflate = false;
+        for (String part : acceptEncoding.toLowerCase(Locale.ROOT).split(",")) {
+            String[] tokens = part.trim().split(";");
+            String name = tokens[0].trim();
+            boolean refused = tokens.length > 1 && tokens[1].trim().matches("q=0(\\.0*)?");
+            if (refused) continue;
+            if (name.equals("gzip") || name.equals("*")) gzip = true;
+            if (name.equals("deflate")) deflate = true;
+        }
+        return gzip ? "gzip" : deflate ? "deflate" : null;
+    }
+
+    private byte[] compress(JsonBody body, String encoding) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length() / 4 + 64);
+        try (OutputStream out = encoding.equals("gzip") ? new GZIPOutputStream(bytes) : new DeflaterOutputStream(bytes)) {
+            out.write(body.data(), 0, body.length());
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Changes whenever a plugin is added, removed or renamed, without serializing the list
+     */
+    private long pluginsVersion(Plugin[] plugins) {
+        long version = plugins.length;
+        for (Plugin plugin : plugins) {
+            version = version * 31 + plugin.getName().hashCode();
+        }
+        return version;
+    }
+
+    private record CompressedBody(long version, byte[] data) {
+    }
+
+    private record CachedLogs(long version, byte[] body) {
+    }
+
+    private boolean isControlRoute(String uri) {
+        return uri.equals("/kick") || uri.equals("/sessions/refresh");
+    }
+
+    /**
+     * Check the bearer token sent by the backend.
+     * Control endpoints are disabled entirely when no api-token is configured.
+     */
+    private boolean isAuthorized(IHTTPSession session) {
+        if (apiToken == null || apiToken.isBlank()) return false;
+        String header = session.getHeaders().get("authorization");
+        if (header == null || !header.startsWith("Bearer ")) return false;
+        byte[] provided = header.substring("Bearer ".length()).getBytes(StandardCharsets.UTF_8);
+        return MessageDigest.isEqual(provided, apiToken.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Read the "uuids" array of a batch request
+     *
+     * @return the parsed UUIDs, or null if the field is missing or contains an invalid UUID
+     */
+    private List<UUID> getUuids(JsonRequest json) {
+        List<String> values = json.getList("uuids");
+        if (values == null) return null;
+        List<UUID> uuids = new ArrayList<>();
+        try {
+            for (String value : values) {
+                uuids.add(UUID.fromString(value));
+            }
+        } catch (RuntimeException e) {
+            return null;
+        }
+        return uuids;
+    }
+
+    private void writeUuidResult(JsonWriter writer, String field, List<UUID> uuids) throws IOException {
+        writer.beginObject();
+        writer.name("success").value(true);
+        writer.name(field).beginArray();
+        for (UUID uuid : uuids) {
+            writer.value(uuid.toString());
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+
+    private void writeRecentLogs(JsonWriter writer) throws IOException {
+        writer.beginArray();
+        for (LogCaptureHandler.LogEntry entry : logCaptureHandler.getRecentLogs()) {
+            JsonResponses.writeLogEntry(writer, entry);
+        }
+        writer.endArray();
+    }
+
+    /**
+     * Statuses missing from {@link Response.Status}
+     */
+    enum ExtraStatus implements Response.IStatus {
+        TOO_MANY_REQUESTS(429, "Too Many Requests"),
+        SERVICE_UNAVAILABLE(503, "Service Unavailable");
+
+        private final int requestStatus;
+        private final String description;
+
+        ExtraStatus(int requestStatus, String description) {
+            this.requestStatus = requestStatus;
+            this.description = description;
+        }
+
+        @Override
+        public String getDescription() {
+            return requestStatus + " " + description;
+        }
+
+        @Override
+        public int getRequestStatus() {
+            return requestStatus;
         }
-        return arr;
     }
 }
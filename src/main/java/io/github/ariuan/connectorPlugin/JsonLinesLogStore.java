@@ -0,0 +1,178 @@
+package io.github.ariuan.connectorPlugin;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Stores entries as Gson JSON lines in a single file
+ */
+public class JsonLinesLogStore implements LogStore {
+    private static final int SCAN_CHUNK_BYTES = 64 * 1024;
+
+    private final File logFile;
+    private final Gson gson = new Gson();
+    // Entries appended by this instance are already in memory, so loading stops at the size the file had on startup
+    private final long loadLimit;
+    private long position;
+
+    public JsonLinesLogStore(File logFile) {
+        this.logFile = logFile;
+        this.loadLimit = logFile.length();
+        this.position = loadLimit;
+    }
+
+    /**
+     * Force written lines to disk, each append closes the file so only the data needs syncing
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * @return the byte offset of the written line
+     */
+    @Override
+    public synchronized long append(LogCaptureHandler.LogEntry entry) throws IOException {
+        byte[] line = (gson.toJson(entry.resolve()) + "\n").getBytes(StandardCharsets.UTF_8); // JSON Lines format
+        try (FileOutputStream out = new FileOutputStream(logFile, true)) {
+            out.write(line);
+        }
+        long address = position;
+        position += line.length;
+        return address;
+    }
+
+    @Override
+    public LogCaptureHandler.LogEntry read(long address) throws IOException {
+        if (!logFile.exists()) return null;
+        try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.READ)) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+            ByteBuffer chunk = ByteBuffer.allocate(4096);
+            long offset = address;
+            while (true) {
+                chunk.clear();
+                int read = channel.read(chunk, offset);
+                if (read <= 0) break;
+                for (int i = 0; i < read; i++) {
+                    byte b = chunk.get(i);
+                    if (b == '\n') {
+                        return parse(line.toString(StandardCharsets.UTF_8));
+                    }
+                    line.write(b);
+                }
+                offset += read;
+            }
+            return parse(line.toString(StandardCharsets.UTF_8));
+        }
+    }
+
+    private LogCaptureHandler.LogEntry parse(String line) {
+        try {
+            return gson.fromJson(line, LogCaptureHandler.LogEntry.class);
+        } catch (JsonSyntaxException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Read the file in chunks and parse line by line, stopping at the size the file had on startup
+     */
+    @Override
+    public void readAfter(long address, ObjLongConsumer<LogCaptureHandler.LogEntry> visitor) throws IOException {
+        if (!logFile.exists()) return;
+        try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.READ)) {
+            long end = Math.min(loadLimit, channel.size());
+            long position = Math.max(0, address);
+            long lineStart = position;
+            ByteBuffer chunk = ByteBuffer.allocate(SCAN_CHUNK_BYTES);
+            byte[] bytes = chunk.array();
+            ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+            while (position < end) {
+                chunk.clear().limit((int) Math.min(SCAN_CHUNK_BYTES, end - position));
+                int read = channel.read(chunk, position);
+                if (read <= 0) break;
+                int from = 0;
+                for (int i = 0; i < read; i++) {
+                    if (bytes[i] != '\n') continue;
+                    line.write(bytes, from, i - from);
+                    // The line at the address itself was seen already
+                    if (lineStart != address) {
+                        LogCaptureHandler.LogEntry entry = parse(line.toString(StandardCharsets.UTF_8));
+                        if (entry != null) visitor.accept(entry, lineStart);
+                    }
+                    line.reset();
+                    from = i + 1;
+                    lineStart = position + from;
+                }
+                line.write(bytes, from, read - from);
+                position += read;
+            }
+        }
+    }
+
+    /**
+     * Scan backwards from the end of the file for the last max lines and parse only those,
+     * so startup time doesn't grow with the size of the file
+     */
+    @Override
+    public List<LogCaptureHandler.LogEntry> loadRecent(int max) throws IOException {
+        List<LogCaptureHandler.LogEntry> entries = new ArrayList<>(max);
+        if (!logFile.exists() || loadLimit == 0 || max <= 0) return entries;
+
+        try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.READ)) {
+            long end = Math.min(loadLimit, channel.size());
+            long start = findTailStart(channel, end, max);
+            MappedByteBuffer tail = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+
+            for (String line : StandardCharsets.UTF_8.decode(tail).toString().split("\n")) {
+                if (line.isBlank()) continue;
+                try {
+                    LogCaptureHandler.LogEntry entry = gson.fromJson(line, LogCaptureHandler.LogEntry.class);
+                    if (entry != null) entries.add(entry);
+                } catch (JsonSyntaxException ignored) {
+                }
+            }
+        }
+        return entries.size() > max ? new ArrayList<>(entries.subList(entries.size() - max, entries.size())) : entries;
+    }
+
+    /**
+     * @return the offset of the first of the last lines lines before end
+     */
+    private long findTailStart(FileChannel channel, long end, int lines) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(SCAN_CHUNK_BYTES);
+        int newlines = 0;
+        long position = end;
+        while (position > 0) {
+            int size = (int) Math.min(SCAN_CHUNK_BYTES, position);
+            position -= size;
+            chunk.clear().limit(size);
+            while (chunk.hasRemaining()) {
+                if (channel.read(chunk, position + chunk.position()) < 0) break;
+            }
+            for (int i = size - 1; i >= 0; i--) {
+                // The newline ending the last line counts too, so stop after lines + 1
+                if (chunk.get(i) == '\n' && ++newlines > lines) {
+                    return position + i + 1;
+                }
+            }
+        }
+        return 0;
+    }
+}
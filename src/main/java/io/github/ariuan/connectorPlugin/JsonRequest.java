@@ -0,0 +1,178 @@
+package io.github.ariuan.connectorPlugin;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import fi.iki.elonen.NanoHTTPD;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Flat view of a JSON request body, read with a streaming reader instead of parsing it into a tree.
+ * Top-level strings, numbers and booleans are kept as strings and arrays of them as lists, nested objects are skipped.
+ */
+final class JsonRequest {
+    private final Map<String, String> values = new HashMap<>();
+    private final Map<String, List<String>> arrays = new HashMap<>();
+
+    private JsonRequest() {
+    }
+
+    /**
+     * Read exactly Content-Length bytes of the request body, so keep-alive connections stay usable
+     *
+     * @throws IllegalArgumentException if the body is not a JSON object
+     */
+    static JsonRequest read(NanoHTTPD.IHTTPSession session) throws IOException {
+        String contentLength = session.getHeaders().get("content-length");
+        long length;
+        try {
+            length = contentLength == null ? 0 : Long.parseLong(contentLength.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid Content-Length");
+        }
+        if (length <= 0) throw new IllegalArgumentException("Missing request body");
+
+        BoundedInputStream in = new BoundedInputStream(session.getInputStream(), length);
+        JsonRequest request = new JsonRequest();
+        try {
+            JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                JsonToken token = reader.peek();
+                if (token == JsonToken.BEGIN_ARRAY) {
+                    request.arrays.put(name, readArray(reader));
+                } else if (isPrimitive(token)) {
+                    request.values.put(name, readPrimitive(reader, token));
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | IOException e) {
+            throw new IllegalArgumentException("Invalid JSON body: " + e.getMessage());
+        } finally {
+            in.skipRemaining();
+        }
+        return request;
+    }
+
+    private static List<String> readArray(JsonReader reader) throws IOException {
+        List<String> items = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            JsonToken token = reader.peek();
+            if (isPrimitive(token)) {
+                items.add(readPrimitive(reader, token));
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endArray();
+        return items;
+    }
+
+    private static boolean isPrimitive(JsonToken token) {
+        return token == JsonToken.STRING || token == JsonToken.NUMBER || token == JsonToken.BOOLEAN || token == JsonToken.NULL;
+    }
+
+    private static String readPrimitive(JsonReader reader, JsonToken token) throws IOException {
+        if (token == JsonToken.BOOLEAN) return String.valueOf(reader.nextBoolean());
+        if (token == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    /**
+     * @return the value, or null if the field is missing or null
+     */
+    String getString(String name) {
+        return values.get(name);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the field is missing or not a number
+     */
+    long getLong(String name) {
+        String value = values.get(name);
+        if (value == null) throw new IllegalArgumentException("Missing " + name);
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name);
+        }
+    }
+
+    /**
+     * @return the value, or null if the field is missing
+     * @throws IllegalArgumentException if the field is not a number
+     */
+    Long getOptionalLong(String name) {
+        return values.get(name) == null ? null : getLong(name);
+    }
+
+    /**
+     * @return whether the field is the boolean true
+     */
+    boolean getBoolean(String name) {
+        return "true".equals(values.get(name));
+    }
+
+    /**
+     * @return the array's primitive items, or null if the field is missing or not an array
+     */
+    List<String> getList(String name) {
+        return arrays.get(name);
+    }
+
+    private static class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        private BoundedInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            int value = super.read();
+            if (value >= 0) remaining--;
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) return -1;
+            int read = super.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read > 0) remaining -= read;
+            return read;
+        }
+
+        @Override
+        public void close() {
+            // The connection's stream stays open for the next request
+        }
+
+        private void skipRemaining() throws IOException {
+            while (remaining > 0) {
+                long skipped = super.skip(remaining);
+                if (skipped <= 0) {
+                    if (super.read() < 0) return;
+                    skipped = 1;
+                }
+                remaining -= skipped;
+            }
+        }
+    }
+}
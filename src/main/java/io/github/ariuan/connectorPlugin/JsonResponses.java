@@ -0,0 +1,186 @@
+package io.github.ariuan.connectorPlugin;
+
+import com.google.gson.stream.JsonWriter;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.serializer.gson.GsonComponentSerializer;
+import org.bukkit.entity.Player;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * JSON output of the HTTP routes. Responses are written with a {@link JsonWriter} straight into pooled byte buffers,
+ * without a JsonObject tree or an intermediate String, using one writer method for each type the routes return.
+ */
+final class JsonResponses {
+    private static final int MAX_POOLED_BUFFERS = 32;
+    // Buffers that grew past this are dropped instead of being pooled
+    private static final int MAX_POOLED_BUFFER_BYTES = 1024 * 1024;
+    private static final Queue<PooledBuffer> POOL = new ConcurrentLinkedQueue<>();
+
+    private JsonResponses() {
+    }
+
+    /**
+     * Writes one JSON document
+     */
+    interface JsonContent {
+        void write(JsonWriter writer) throws IOException;
+    }
+
+    /**
+     * Result of a /runCommand job
+     *
+     * @param messages   What the command sent back, serialized when the result is written
+     * @param components Also write the messages as serialized components
+     * @param error      Why the command did not run, or null
+     */
+    record CommandResult(boolean success, List<Component> messages, String logger, boolean components, String error) {
+    }
+
+    /**
+     * Serialize a document into a pooled buffer, the buffer returns to the pool once the response is closed
+     */
+    static JsonBody write(JsonContent content) throws IOException {
+        PooledBuffer buffer = POOL.poll();
+        if (buffer == null) buffer = new PooledBuffer();
+        // Not closed, that would close the reusable writer underneath.
+        // If writing fails the buffer is simply not pooled again, its writer may still hold part of the document.
+        JsonWriter writer = new JsonWriter(buffer.writer);
+        content.write(writer);
+        writer.flush();
+        return new JsonBody(buffer.array(), buffer.size(), buffer);
+    }
+
+    /**
+     * Serialized response body, backed by a pooled buffer or a plain array
+     */
+    static final class JsonBody {
+        private final byte[] data;
+        private final int length;
+        private final PooledBuffer owner;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private JsonBody(byte[] data, int length, PooledBuffer owner) {
+            this.data = data;
+            this.length = length;
+            this.owner = owner;
+        }
+
+        static JsonBody of(byte[] data) {
+            return new JsonBody(data, data.length, null);
+        }
+
+        byte[] data() {
+            return data;
+        }
+
+        int length() {
+            return length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(data, length);
+        }
+
+        /**
+         * @return a stream over the body that releases it when NanoHTTPD closes the response
+         */
+        InputStream open() {
+            return new ByteArrayInputStream(data, 0, length) {
+                @Override
+                public void close() {
+                    release();
+                }
+            };
+        }
+
+        void release() {
+            if (owner != null && released.compareAndSet(false, true)) {
+                owner.recycle();
+            }
+        }
+    }
+
+    private static final class PooledBuffer extends ByteArrayOutputStream {
+        // Buffered, the encoder allocates on every unbuffered write and JsonWriter writes in small pieces
+        private final Writer writer = new BufferedWriter(new OutputStreamWriter(this, StandardCharsets.UTF_8), 8192);
+
+        private PooledBuffer() {
+            super(4096);
+        }
+
+        private byte[] array() {
+            return buf;
+        }
+
+        private void recycle() {
+            if (buf.length > MAX_POOLED_BUFFER_BYTES || POOL.size() >= MAX_POOLED_BUFFERS) return;
+            reset();
+            POOL.offer(this);
+        }
+    }
+
+    /**
+     * Entry as shown by /logs
+     */
+    static void writeLogEntry(JsonWriter out, LogCaptureHandler.LogEntry entry) throws IOException {
+        out.beginObject();
+        writeLogEntryFields(out, entry);
+        out.endObject();
+    }
+
+    static void writeSearchHit(JsonWriter out, LogSearchIndex.Hit hit) throws IOException {
+        out.beginObject();
+        out.name("seq").value(hit.sequence());
+        writeLogEntryFields(out, hit.entry());
+        out.endObject();
+    }
+
+    static void writePlayer(JsonWriter out, Player player) throws IOException {
+        out.beginObject();
+        out.name("uuid").value(player.getUniqueId().toString());
+        out.name("name").value(player.getName());
+        out.endObject();
+    }
+
+    static void writeCommandResult(JsonWriter out, CommandResult result) throws IOException {
+        out.beginObject();
+        out.name("success").value(result.success());
+        out.name("output").value(CapturingConsoleSender.toPlainText(result.messages()).trim());
+        out.name("logger").value(result.logger());
+        if (result.components()) {
+            out.name("components").beginArray();
+            for (Component message : result.messages()) {
+                out.jsonValue(GsonComponentSerializer.gson().serialize(message));
+            }
+            out.endArray();
+        }
+        if (result.error() != null) {
+            out.name("error").value(result.error());
+        }
+        out.endObject();
+    }
+
+    private static void writeLogEntryFields(JsonWriter out, LogCaptureHandler.LogEntry entry) throws IOException {
+        out.name("timestamp").value(entry.getTimestamp());
+        out.name("message").value(entry.getMessage());
+        out.name("type").value("server");
+        if (entry.getRepeatCount() > 1) {
+            out.name("repeat").value(entry.getRepeatCount());
+            out.name("lastTimestamp").value(Instant.ofEpochMilli(entry.getLastEpochMillis()).toString());
+        }
+    }
+}
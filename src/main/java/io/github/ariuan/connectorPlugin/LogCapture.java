@@ -5,15 +5,24 @@ import java.util.logging.LogRecord;
 
 public class LogCapture extends Handler {
     private final StringBuilder captured = new StringBuilder();
+    private volatile long lastPublishNanos;
 
-    public String getCapturedOutput() {
+    public synchronized String getCapturedOutput() {
         return captured.toString();
     }
 
+    /**
+     * @return System.nanoTime() of the last captured record, or 0 if nothing was logged yet
+     */
+    public long getLastPublishNanos() {
+        return lastPublishNanos;
+    }
+
     @Override
-    public void publish(LogRecord record) {
+    public synchronized void publish(LogRecord record) {
         if (record.getMessage() != null) {
             captured.append(record.getMessage()).append("\n");
+            lastPublishNanos = System.nanoTime();
         }
     }
 
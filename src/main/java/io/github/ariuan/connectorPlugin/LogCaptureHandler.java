@@ -1,80 +1,417 @@
 package io.github.ariuan.connectorPlugin;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.logging.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.time.Instant;
 
-import com.google.gson.*;
-
 public class LogCaptureHandler extends Handler {
     private static final int MAX_LOGS = 1000;
+    private static final int MAX_PENDING_WRITES = 16384;
+    private static final long ERROR_LOG_INTERVAL_MILLIS = 60 * 1000;
+    // Loggers past this many share one rate limit bucket, so the bucket map stays bounded
+    private static final int MAX_LOGGER_BUCKETS = 1024;
+    private static final String SHARED_BUCKET = "*";
     private final LinkedBlockingQueue<LogEntry> logs = new LinkedBlockingQueue<>(MAX_LOGS);
-    private final File logFile;
-    private final Gson gson = new Gson();
+    private final LogStore store;
+    private final LogSearchIndex searchIndex;
+    private final AtomicLong version = new AtomicLong();
+    // Guards the in-memory window so loaded history can be merged in front of entries captured meanwhile
+    private final Object windowLock = new Object();
+    private volatile boolean loading = true;
+    private volatile long lastErrorLogged;
+    private final double loggerRatePerSecond;
+    private final double loggerBurst;
+    private final TokenBucket globalBucket;
+    private final Map<String, TokenBucket> loggerBuckets = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> suppressedByLogger = new ConcurrentHashMap<>();
+    private final AtomicLong suppressed = new AtomicLong();
+    private final AtomicLong collapsed = new AtomicLong();
+    // Last captured record, guarded by windowLock, used to collapse consecutive duplicates
+    private LogEntry lastEntry;
+    private String lastLoggerName;
+    private Level lastLevel;
+    private String lastPattern;
+    private Object[] lastParams;
+    // Formats and persists entries off the publishing thread, the caller writes itself when the queue is full
+    private final ThreadPoolExecutor writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(MAX_PENDING_WRITES), runnable -> {
+        Thread thread = new Thread(runnable, "ConnectorLogWriter");
+        thread.setDaemon(true);
+        return thread;
+    }, new ThreadPoolExecutor.CallerRunsPolicy());
 
+    /**
+     * A captured log line. Entries captured live keep the raw LogRecord and only run parameter substitution
+     * and timestamp formatting when the message is first read or persisted.
+     */
     public static class LogEntry {
-        public final String message;
-        public final String timestamp;
+        private volatile String message;
+        private volatile String timestamp;
+        private final String level;
+        private final String source;
+        private final long threadId;
+        private final long sequence;
+        // Not serialized, entries read back from JSON lines fall back to parsing the timestamp
+        private final transient long epochMillis;
+        private transient volatile Instant instant;
+        private transient volatile LogRecord record;
+        private final transient Formatter formatter;
+        // In memory only, the end of a run of duplicates is persisted as a separate summary entry
+        private transient int repeatCount;
+        private transient long lastEpochMillis;
 
-        public LogEntry(String message) {
+        public LogEntry(String message, String level, String source, Instant instant) {
             this.message = message;
-            this.timestamp = Instant.now().toString(); // ISO-8601
+            this.timestamp = instant.toString(); // ISO-8601
+            this.level = level;
+            this.source = source;
+            this.threadId = -1;
+            this.sequence = -1;
+            this.epochMillis = instant.toEpochMilli();
+            this.formatter = null;
+        }
+
+        /**
+         * Capture a record without formatting it
+         */
+        public LogEntry(LogRecord record, Formatter formatter) {
+            this.record = record;
+            this.formatter = formatter;
+            this.instant = record.getInstant();
+            this.level = record.getLevel().getName();
+            this.source = record.getLoggerName();
+            this.threadId = record.getLongThreadID();
+            this.sequence = record.getSequenceNumber();
+            this.epochMillis = instant.toEpochMilli();
+        }
+
+        public String getMessage() {
+            String resolved = message;
+            if (resolved != null) return resolved;
+            synchronized (this) {
+                if (message == null) {
+                    LogRecord raw = record;
+                    message = raw == null ? "" : formatter.formatMessage(raw);
+                    // Drop the record so its parameters can be collected
+                    record = null;
+                }
+                return message;
+            }
+        }
+
+        public String getTimestamp() {
+            String resolved = timestamp;
+            if (resolved == null) {
+                resolved = instant.toString(); // ISO-8601
+                timestamp = resolved;
+            }
+            return resolved;
+        }
+
+        public String getLevel() {
+            return level;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public long getThreadId() {
+            return threadId;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public long getEpochMillis() {
+            return epochMillis != 0 ? epochMillis : Instant.parse(getTimestamp()).toEpochMilli();
+        }
+
+        /**
+         * @return how many times this message was logged in a row, 1 if it was not repeated
+         */
+        public synchronized int getRepeatCount() {
+            return Math.max(1, repeatCount);
+        }
+
+        /**
+         * @return epoch milliseconds of the last repetition
+         */
+        public synchronized long getLastEpochMillis() {
+            return repeatCount > 1 ? lastEpochMillis : getEpochMillis();
+        }
+
+        private synchronized void addRepeat(long epochMillis) {
+            repeatCount = getRepeatCount() + 1;
+            lastEpochMillis = epochMillis;
+        }
+
+        /**
+         * Format the message and timestamp now, so the fields are set before the entry is serialized
+         *
+         * @return this entry
+         */
+        public LogEntry resolve() {
+            getMessage();
+            getTimestamp();
+            return this;
         }
     }
 
-    public LogCaptureHandler(File logFile) {
-        this.logFile = logFile;
-        loadLogsFromFile();
+    /**
+     * @param searchIndex         Index to add persisted entries to, or null to disable search
+     * @param loggerRatePerSecond Records per second each logger may capture, 0 for no limit
+     * @param loggerBurst         Records a logger may capture at once before the rate applies
+     * @param globalRatePerSecond Records per second captured across all loggers, 0 for no limit
+     */
+    public LogCaptureHandler(LogStore store, LogSearchIndex searchIndex, double loggerRatePerSecond, double loggerBurst, double globalRatePerSecond) {
+        this.store = store;
+        this.searchIndex = searchIndex;
+        this.loggerRatePerSecond = loggerRatePerSecond;
+        this.loggerBurst = Math.max(1, loggerBurst);
+        this.globalBucket = globalRatePerSecond > 0 ? new TokenBucket(globalRatePerSecond, globalRatePerSecond * 2) : null;
+        // Load history off the main thread, /logs serves what has been captured so far until it's done
+        CompletableFuture.runAsync(this::loadLogsFromFile);
     }
 
     @Override
     public void publish(LogRecord record) {
         if (!isLoggable(record)) return;
 
-        String msg = getFormatter().formatMessage(record);
-        LogEntry entry = new LogEntry(msg);
+        PluginEvents.LogCapture event = new PluginEvents.LogCapture();
+        event.begin();
+        String loggerName = record.getLoggerName() == null ? "" : record.getLoggerName();
+        synchronized (windowLock) {
+            if (isRepeatOfLast(record)) {
+                lastEntry.addRepeat(record.getInstant().toEpochMilli());
+                collapsed.incrementAndGet();
+                version.incrementAndGet();
+                event.finish(loggerName, record.getLevel().getName(), "collapsed");
+                return;
+            }
+        }
+        if (!tryAcquire(loggerName)) {
+            suppressed.incrementAndGet();
+            suppressedByLogger.computeIfAbsent(bucketName(loggerName), key -> new AtomicLong()).incrementAndGet();
+            event.finish(loggerName, record.getLevel().getName(), "suppressed");
+            return;
+        }
+
+        LogEntry entry = new LogEntry(record, getFormatter());
+        LogEntry endedRun;
 
         // Keep in memory
-        if (logs.size() == MAX_LOGS) logs.poll();
-        logs.offer(entry);
+        synchronized (windowLock) {
+            endedRun = lastEntry;
+            lastEntry = entry;
+            lastLoggerName = record.getLoggerName();
+            lastLevel = record.getLevel();
+            lastPattern = record.getMessage();
+            lastParams = record.getParameters();
+            offerBounded(entry);
+        }
+        version.incrementAndGet();
 
         // Write to file
-        try (FileWriter writer = new FileWriter(logFile, true)) {
-            writer.write(gson.toJson(entry));
-            writer.write("\n"); // JSON Lines format
+        enqueueRepeatSummary(endedRun);
+        enqueue(entry);
+        event.finish(loggerName, record.getLevel().getName(), "captured");
+    }
+
+    /**
+     * @return records dropped by the rate limits since startup
+     */
+    public long getSuppressedCount() {
+        return suppressed.get();
+    }
+
+    /**
+     * @return records folded into the previous entry as duplicates since startup
+     */
+    public long getCollapsedCount() {
+        return collapsed.get();
+    }
+
+    /**
+     * @return records dropped by the rate limits per logger name
+     */
+    public Map<String, Long> getSuppressedByLogger() {
+        Map<String, Long> counts = new HashMap<>();
+        suppressedByLogger.forEach((name, count) -> counts.put(name, count.get()));
+        return counts;
+    }
+
+    private boolean isRepeatOfLast(LogRecord record) {
+        return lastEntry != null
+                && record.getLevel() == lastLevel
+                && Objects.equals(record.getLoggerName(), lastLoggerName)
+                && Objects.equals(record.getMessage(), lastPattern)
+                && Arrays.equals(record.getParameters(), lastParams);
+    }
+
+    private boolean tryAcquire(String loggerName) {
+        if (loggerRatePerSecond > 0) {
+            TokenBucket bucket = loggerBuckets.computeIfAbsent(bucketName(loggerName), key -> new TokenBucket(loggerRatePerSecond, loggerBurst));
+            if (!bucket.tryAcquire()) return false;
+        }
+        return globalBucket == null || globalBucket.tryAcquire();
+    }
+
+    private String bucketName(String loggerName) {
+        return loggerBuckets.size() < MAX_LOGGER_BUCKETS || loggerBuckets.containsKey(loggerName) ? loggerName : SHARED_BUCKET;
+    }
+
+    /**
+     * Persist a one-line summary for an entry that was repeated, once the run of duplicates ended
+     */
+    private void enqueueRepeatSummary(LogEntry entry) {
+        if (entry == null || entry.getRepeatCount() <= 1) return;
+        String message = "Previous message repeated " + (entry.getRepeatCount() - 1) + " more times until " + Instant.ofEpochMilli(entry.getLastEpochMillis());
+        enqueue(new LogEntry(message, entry.getLevel(), entry.getSource(), Instant.ofEpochMilli(entry.getLastEpochMillis())));
+    }
+
+    private void enqueue(LogEntry entry) {
+        if (!writer.isShutdown()) {
+            writer.execute(() -> persist(entry));
+        }
+    }
+
+    private void persist(LogEntry entry) {
+        PluginEvents.LogWrite event = new PluginEvents.LogWrite();
+        event.begin();
+        try {
+            long address = store.append(entry);
+            if (searchIndex != null) {
+                searchIndex.add(entry, address);
+            }
+            event.finish(true);
         } catch (IOException e) {
-            ConnectorPlugin.getInstance().getLogger().warning("Error writing log: " + e.getMessage());
+            event.finish(false);
+            // In server-wide mode this warning is captured again, so don't let a broken disk feed itself
+            long now = System.currentTimeMillis();
+            if (now - lastErrorLogged > ERROR_LOG_INTERVAL_MILLIS) {
+                lastErrorLogged = now;
+                ConnectorPlugin.getInstance().getLogger().warning("Error writing log: " + e.getMessage());
+            }
         }
     }
 
+    /**
+     * @return a counter that changes whenever a new entry is captured
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * @return true while the history from disk is still being loaded
+     */
+    public boolean isLoading() {
+        return loading;
+    }
+
+    /**
+     * @return the full-text index over persisted entries, or null if search is disabled
+     */
+    public LogSearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
     public LogEntry[] getRecentLogs() {
         return logs.toArray(new LogEntry[0]);
     }
 
+    /**
+     * Drop all but the newest in-memory entries, they stay in the log store
+     */
+    public void trimRecentLogs(int keep) {
+        synchronized (windowLock) {
+            while (logs.size() > keep) {
+                logs.poll();
+            }
+        }
+        version.incrementAndGet();
+    }
+
     private void loadLogsFromFile() {
-        if (!logFile.exists()) return;
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(logFile))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                try {
-                    LogEntry entry = gson.fromJson(line, LogEntry.class);
-                    if (logs.size() == MAX_LOGS) logs.poll();
-                    logs.offer(entry);
-                } catch (JsonSyntaxException ignored) {
-                }
+        try {
+            List<LogEntry> loaded = store.loadRecent(MAX_LOGS);
+            synchronized (windowLock) {
+                List<LogEntry> captured = new ArrayList<>(logs);
+                logs.clear();
+                loaded.forEach(this::offerBounded);
+                captured.forEach(this::offerBounded);
             }
+            version.incrementAndGet();
         } catch (IOException e) {
             ConnectorPlugin.getInstance().getLogger().warning("Error writing log: " + e.getMessage());
+        } finally {
+            loading = false;
         }
     }
 
+    private void offerBounded(LogEntry entry) {
+        if (logs.size() == MAX_LOGS) logs.poll();
+        logs.offer(entry);
+    }
+
     @Override
     public void flush() {
+        try {
+            if (!writer.isShutdown()) {
+                // Wait for everything queued before this point
+                writer.submit(() -> {
+                }).get(10, TimeUnit.SECONDS);
+            }
+            store.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            ConnectorPlugin.getInstance().getLogger().warning("Error flushing log: " + e.getMessage());
+        } catch (IOException e) {
+            ConnectorPlugin.getInstance().getLogger().warning("Error flushing log: " + e.getMessage());
+        }
     }
 
     @Override
     public void close() throws SecurityException {
+        LogEntry last;
+        synchronized (windowLock) {
+            last = lastEntry;
+            lastEntry = null;
+        }
+        enqueueRepeatSummary(last);
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                ConnectorPlugin.getInstance().getLogger().warning("Timed out writing pending log entries");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (searchIndex != null) {
+            searchIndex.close();
+        }
+        try {
+            store.close();
+        } catch (IOException e) {
+            ConnectorPlugin.getInstance().getLogger().warning("Error closing log: " + e.getMessage());
+        }
     }
-}
\ No newline at end of file
+}
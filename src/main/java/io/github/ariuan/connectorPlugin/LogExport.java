@@ -0,0 +1,55 @@
+package io.github.ariuan.connectorPlugin;
+
+import com.google.gson.Gson;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line tool that converts binary log segments to JSON Lines on stdout, for grep-style tooling.
+ * <p>
+ * Usage: {@code java -cp <plugin jar>:<gson jar> io.github.ariuan.connectorPlugin.LogExport <segment or directory>...}
+ */
+public class LogExport {
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: LogExport <segment file or log directory>...");
+            System.exit(1);
+        }
+
+        List<File> segments = new ArrayList<>();
+        for (String arg : args) {
+            File file = new File(arg);
+            if (file.isDirectory()) {
+                segments.addAll(BinaryLogStore.listSegments(file));
+            } else {
+                segments.add(file);
+            }
+        }
+
+        Gson gson = new Gson();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))) {
+            for (File segment : segments) {
+                try {
+                    BinaryLogStore.readSegment(segment, entry -> {
+                        try {
+                            writer.write(gson.toJson(entry));
+                            writer.write("\n");
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                } catch (IOException e) {
+                    System.err.println("Skipping " + segment + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+}
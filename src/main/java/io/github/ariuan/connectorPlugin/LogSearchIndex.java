@@ -0,0 +1,474 @@
+package io.github.ariuan.connectorPlugin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Token-level inverted index over captured log entries.
+ * <p>
+ * Every entry gets a sequence number and is added to an in-memory segment. Once a segment holds
+ * {@code segmentEntries} entries it is sealed and written to {@code index-<first sequence>.idx},
+ * which maps tokens to the entries containing them and entries to their address in the {@link LogStore}.
+ * Searches walk segments from newest to oldest, so results come back most recent first.
+ * <p>
+ * The active segment only lives in memory, so on startup the entries after the last sealed one are read back
+ * from the store and indexed again off the main thread. Entries added meanwhile wait until that is done,
+ * so sequence numbers keep following the order of the store.
+ */
+public class LogSearchIndex {
+    private static final int MAGIC = 0x444D4349; // "DMCI"
+    private static final byte VERSION = 1;
+    private static final String INDEX_PREFIX = "index-";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final int CACHED_SEGMENTS = 16;
+    // Longer tokens are cut, well below the 65535 bytes writeUTF can store
+    private static final int MAX_TOKEN_LENGTH = 256;
+
+    private final File directory;
+    private final LogStore store;
+    private final int segmentEntries;
+    private final Logger logger;
+    private final List<SealedSegment> sealed = new CopyOnWriteArrayList<>();
+    // Sealed segments still being written to disk, searched from memory meanwhile
+    private final List<IndexSegment> pending = new CopyOnWriteArrayList<>();
+    private final Map<File, IndexSegment> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, IndexSegment> eldest) {
+            return size() > CACHED_SEGMENTS;
+        }
+    };
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ConnectorLogIndexWriter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private IndexSegment active;
+    // Entries added while catching up, indexed after the older entries. Guarded by this.
+    private List<Deferred> deferred = new ArrayList<>();
+    private volatile boolean closed;
+
+    public record Hit(long sequence, LogCaptureHandler.LogEntry entry) {
+    }
+
+    public record SearchResult(List<Hit> hits, long nextCursor) {
+    }
+
+    public LogSearchIndex(File directory, LogStore store, int segmentEntries, Logger logger) throws IOException {
+        this.directory = directory;
+        this.store = store;
+        this.segmentEntries = segmentEntries;
+        this.logger = logger;
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create index directory " + directory);
+        }
+
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(INDEX_PREFIX) && name.endsWith(INDEX_SUFFIX));
+        long nextSequence = 0;
+        if (files != null) {
+            for (File file : files) {
+                try {
+                    SealedSegment segment = SealedSegment.open(file);
+                    sealed.add(segment);
+                    nextSequence = Math.max(nextSequence, segment.firstSequence + segment.count);
+                } catch (IOException e) {
+                    logger.warning("Skipping unreadable log index " + file.getName() + ": " + e.getMessage());
+                }
+            }
+        }
+        sealed.sort(Comparator.comparingLong(segment -> segment.firstSequence));
+        active = new IndexSegment(nextSequence);
+        CompletableFuture.runAsync(this::catchUp);
+    }
+
+    /**
+     * Index an entry that was just persisted
+     *
+     * @param address Address returned by {@link LogStore#append(LogCaptureHandler.LogEntry)}
+     * @return the sequence number assigned to the entry, or -1 if it waits for the startup indexing
+     */
+    public synchronized long add(LogCaptureHandler.LogEntry entry, long address) {
+        Set<String> tokens = tokenize(entry.getMessage());
+        if (deferred != null) {
+            deferred.add(new Deferred(tokens, address));
+            return -1;
+        }
+        return index(tokens, address);
+    }
+
+    /**
+     * @return true while entries missing from the index are still being added on startup
+     */
+    public synchronized boolean isIndexing() {
+        return deferred != null;
+    }
+
+    /**
+     * Find entries containing every token of the query, newest first
+     *
+     * @param query  Free text, split into tokens the same way as indexed messages
+     * @param before Only return entries with a sequence number below this cursor, Long.MAX_VALUE for the newest
+     * @param limit  Maximum number of hits
+     * @return the hits and the cursor for the next page, or -1 if there are no more results
+     */
+    public SearchResult search(String query, long before, int limit) throws IOException {
+        Set<String> tokens = tokenize(query);
+        List<long[]> matches = new ArrayList<>(); // sequence, address
+        if (tokens.isEmpty() || limit <= 0) return new SearchResult(new ArrayList<>(), -1);
+
+        synchronized (this) {
+            active.search(tokens, before, limit, matches);
+        }
+        List<IndexSegment> pendingNewestFirst = new ArrayList<>(pending);
+        pendingNewestFirst.sort(Comparator.comparingLong((IndexSegment segment) -> segment.firstSequence).reversed());
+        Set<Long> pendingSequences = new HashSet<>();
+        for (IndexSegment segment : pendingNewestFirst) {
+            pendingSequences.add(segment.firstSequence);
+            if (matches.size() >= limit) break;
+            segment.search(tokens, before, limit, matches);
+        }
+        for (int i = sealed.size() - 1; i >= 0 && matches.size() < limit; i--) {
+            SealedSegment segment = sealed.get(i);
+            // Segments that just finished writing may still be in the pending list
+            if (segment.firstSequence >= before || pendingSequences.contains(segment.firstSequence)) continue;
+            load(segment).search(tokens, before, limit, matches);
+        }
+
+        List<Hit> hits = new ArrayList<>(matches.size());
+        for (long[] match : matches) {
+            LogCaptureHandler.LogEntry entry = store.read(match[1]);
+            if (entry != null) {
+                hits.add(new Hit(match[0], entry));
+            }
+        }
+        long nextCursor = matches.size() >= limit ? matches.get(matches.size() - 1)[0] : -1;
+        return new SearchResult(hits, nextCursor);
+    }
+
+    /**
+     * Write the active segment to disk, called when the plugin is disabled
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            // Deferred entries are dropped, the next startup indexes them after the older ones it didn't reach
+            deferred = null;
+            if (active.count() > 0) seal();
+        }
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warning("Timed out writing the log index");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Index the entries the store has after the newest sealed segment, lost with the active segment when the server stopped
+     * without closing the index. Without any sealed segment this indexes the whole store.
+     */
+    private void catchUp() {
+        long[] indexed = new long[1];
+        try {
+            long lastAddress = -1;
+            if (!sealed.isEmpty()) {
+                IndexSegment last = load(sealed.get(sealed.size() - 1));
+                if (last.count() > 0) lastAddress = last.addresses[last.count() - 1];
+            }
+            store.readAfter(lastAddress, (entry, address) -> {
+                Set<String> tokens = tokenize(entry.getMessage());
+                synchronized (this) {
+                    if (closed) throw new CancellationException();
+                    index(tokens, address);
+                }
+                indexed[0]++;
+            });
+        } catch (IOException e) {
+            logger.warning("Error indexing log entries missing from the search index: " + e.getMessage());
+        } catch (CancellationException e) {
+            return;
+        } finally {
+            synchronized (this) {
+                if (deferred != null) {
+                    for (Deferred entry : deferred) {
+                        index(entry.tokens, entry.address);
+                    }
+                    deferred = null;
+                }
+            }
+        }
+        if (indexed[0] > 0) {
+            logger.info("Indexed " + indexed[0] + " log entries missing from the search index");
+        }
+    }
+
+    private long index(Set<String> tokens, long address) {
+        long sequence = active.add(tokens, address);
+        if (active.count() >= segmentEntries) {
+            seal();
+        }
+        return sequence;
+    }
+
+    /**
+     * Split text into lower case tokens of letters, digits and underscores, so player names stay one token
+     */
+    static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text == null) return tokens;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean tokenChar = i < text.length() && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '_');
+            if (tokenChar && start < 0) {
+                start = i;
+            } else if (!tokenChar && start >= 0) {
+                tokens.add(text.substring(start, Math.min(i, start + MAX_TOKEN_LENGTH)).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private void seal() {
+        IndexSegment segment = active;
+        active = new IndexSegment(segment.firstSequence + segment.count());
+        pending.add(segment);
+        writer.execute(() -> {
+            File file = new File(directory, String.format("%s%016d%s", INDEX_PREFIX, segment.firstSequence, INDEX_SUFFIX));
+            try {
+                segment.write(file);
+                sealed.add(new SealedSegment(file, segment.firstSequence, segment.count()));
+            } catch (IOException e) {
+                logger.warning("Error writing log index " + file.getName() + ": " + e.getMessage());
+            } finally {
+                pending.remove(segment);
+            }
+        });
+    }
+
+    private IndexSegment load(SealedSegment segment) throws IOException {
+        synchronized (cache) {
+            IndexSegment loaded = cache.get(segment.file);
+            if (loaded == null) {
+                loaded = IndexSegment.read(segment.file);
+                cache.put(segment.file, loaded);
+            }
+            return loaded;
+        }
+    }
+
+    private record Deferred(Set<String> tokens, long address) {
+    }
+
+    private record SealedSegment(File file, long firstSequence, int count) {
+        static SealedSegment open(File file) throws IOException {
+            try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+                if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                    throw new IOException("Not a log index");
+                }
+                return new SealedSegment(file, in.readLong(), in.readInt());
+            }
+        }
+    }
+
+    /**
+     * Postings of one segment, keyed by token. Local ids are positions in the segment, ascending.
+     */
+    private static class IndexSegment {
+        private final long firstSequence;
+        private final Map<String, IntList> postings;
+        private long[] addresses;
+        private int count;
+
+        private IndexSegment(long firstSequence) {
+            this(firstSequence, new HashMap<>(), new long[1024], 0);
+        }
+
+        private IndexSegment(long firstSequence, Map<String, IntList> postings, long[] addresses, int count) {
+            this.firstSequence = firstSequence;
+            this.postings = postings;
+            this.addresses = addresses;
+            this.count = count;
+        }
+
+        private int count() {
+            return count;
+        }
+
+        private long add(Set<String> tokens, long address) {
+            if (count == addresses.length) {
+                addresses = Arrays.copyOf(addresses, count * 2);
+            }
+            int id = count++;
+            addresses[id] = address;
+            for (String token : tokens) {
+                postings.computeIfAbsent(token, key -> new IntList()).add(id);
+            }
+            return firstSequence + id;
+        }
+
+        /**
+         * Append matches of this segment, newest first, until matches holds limit entries
+         */
+        private void search(Set<String> tokens, long before, int limit, List<long[]> matches) {
+            List<IntList> lists = new ArrayList<>(tokens.size());
+            for (String token : tokens) {
+                IntList list = postings.get(token);
+                if (list == null) return;
+                lists.add(list);
+            }
+            lists.sort(Comparator.comparingInt(IntList::size));
+            IntList shortest = lists.get(0);
+
+            for (int i = shortest.size() - 1; i >= 0 && matches.size() < limit; i--) {
+                int id = shortest.get(i);
+                long sequence = firstSequence + id;
+                if (sequence >= before) continue;
+                boolean all = true;
+                for (int j = 1; j < lists.size() && all; j++) {
+                    all = lists.get(j).contains(id);
+                }
+                if (all) {
+                    matches.add(new long[]{sequence, addresses[id]});
+                }
+            }
+        }
+
+        private void write(File file) throws IOException {
+            File temp = new File(file.getPath() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                out.writeLong(firstSequence);
+                out.writeInt(count);
+                for (int i = 0; i < count; i++) {
+                    out.writeLong(addresses[i]);
+                }
+                Map<String, IntList> sorted = new TreeMap<>(postings);
+                out.writeInt(sorted.size());
+                for (Map.Entry<String, IntList> entry : sorted.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    IntList ids = entry.getValue();
+                    writeVarInt(out, ids.size());
+                    int previous = 0;
+                    for (int i = 0; i < ids.size(); i++) {
+                        writeVarInt(out, ids.get(i) - previous);
+                        previous = ids.get(i);
+                    }
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        private static IndexSegment read(File file) throws IOException {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+                if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                    throw new IOException("Not a log index: " + file);
+                }
+                long firstSequence = in.readLong();
+                int count = in.readInt();
+                long[] addresses = new long[count];
+                for (int i = 0; i < count; i++) {
+                    addresses[i] = in.readLong();
+                }
+                int tokens = in.readInt();
+                Map<String, IntList> postings = new HashMap<>(tokens * 2);
+                for (int t = 0; t < tokens; t++) {
+                    String token = in.readUTF();
+                    int size = readVarInt(in);
+                    IntList ids = new IntList(size);
+                    int previous = 0;
+                    for (int i = 0; i < size; i++) {
+                        previous += readVarInt(in);
+                        ids.add(previous);
+                    }
+                    postings.put(token, ids);
+                }
+                return new IndexSegment(firstSequence, postings, addresses, count);
+            }
+        }
+
+        private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                out.writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte(value);
+        }
+
+        private static int readVarInt(DataInputStream in) throws IOException {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = in.readByte();
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+
+    /**
+     * Growable sorted int array, cheaper than a List of Integer for postings
+     */
+    private static class IntList {
+        private int[] values;
+        private int size;
+
+        private IntList() {
+            this(4);
+        }
+
+        private IntList(int capacity) {
+            this.values = new int[Math.max(1, capacity)];
+        }
+
+        private void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        private int get(int index) {
+            return values[index];
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private boolean contains(int value) {
+            return Arrays.binarySearch(values, 0, size, value) >= 0;
+        }
+    }
+}
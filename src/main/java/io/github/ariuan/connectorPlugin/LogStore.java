@@ -0,0 +1,48 @@
+package io.github.ariuan.connectorPlugin;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * On-disk storage for captured log entries
+ */
+public interface LogStore {
+    /**
+     * Persist one entry. Called for every captured record, possibly from several threads.
+     *
+     * @return an address that {@link #read(long)} accepts to read the entry back
+     */
+    long append(LogCaptureHandler.LogEntry entry) throws IOException;
+
+    /**
+     * Read back a single entry
+     *
+     * @param address Address returned by {@link #append(LogCaptureHandler.LogEntry)}
+     * @return the entry, or null if it no longer exists
+     */
+    LogCaptureHandler.LogEntry read(long address) throws IOException;
+
+    /**
+     * Read back the newest entries, used to fill the in-memory window on startup
+     *
+     * @param max Maximum number of entries to return
+     * @return up to max entries in chronological order
+     */
+    List<LogCaptureHandler.LogEntry> loadRecent(int max) throws IOException;
+
+    /**
+     * Read back the entries that were stored when this store was opened and come after an address, oldest first.
+     * Used to index entries an index lost in a crash.
+     *
+     * @param address Address of the last entry to skip, -1 to read every entry
+     * @param visitor Receives each entry with its address
+     */
+    void readAfter(long address, ObjLongConsumer<LogCaptureHandler.LogEntry> visitor) throws IOException;
+
+    default void flush() throws IOException {
+    }
+
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,209 @@
+package io.github.ariuan.connectorPlugin;
+
+import com.google.gson.stream.JsonWriter;
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * The plugin's single queue of work for the main thread.
+ * It is drained once per tick until the time budget is used up, higher priority lanes first, so a burst of
+ * API calls is spread over several ticks instead of lagging one.
+ */
+public class MainThreadExecutor {
+    /**
+     * Lanes in drain order
+     */
+    public enum Lane {
+        // Kicks and verification results, never rejected
+        CRITICAL,
+        // Session refreshes and other per-player changes
+        INTERACTIVE,
+        // Console commands and other bulk work
+        BULK
+    }
+
+    private static final int WAIT_SAMPLES = 1024;
+
+    private final Plugin plugin;
+    private final long budgetNanos;
+    private final int capacity;
+    private final Map<Lane, LaneQueue> lanes = new EnumMap<>(Lane.class);
+    // Queued tasks of the lanes that count against the capacity
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicLong ticksOverBudget = new AtomicLong();
+    private volatile long lastDrainNanos;
+    private volatile boolean stopped;
+    private BukkitTask drainTask;
+
+    /**
+     * @param budgetMicros Time per tick spent on queued tasks, at least one task runs every tick
+     * @param capacity     Queued tasks at which new non-critical tasks are rejected
+     */
+    public MainThreadExecutor(Plugin plugin, long budgetMicros, int capacity) {
+        this.plugin = plugin;
+        this.budgetNanos = TimeUnit.MICROSECONDS.toNanos(budgetMicros);
+        this.capacity = capacity;
+        for (Lane lane : Lane.values()) {
+            lanes.put(lane, new LaneQueue());
+        }
+    }
+
+    public void start() {
+        drainTask = Bukkit.getScheduler().runTaskTimer(plugin, this::drain, 1, 1);
+    }
+
+    /**
+     * Queue a task for the main thread
+     *
+     * @return a future completed with the task's result on the main thread
+     * @throws RejectedExecutionException if the queue is full or the plugin is disabled
+     */
+    public <T> CompletableFuture<T> submit(Lane lane, Supplier<T> task) {
+        if (stopped) throw new RejectedExecutionException("Plugin is disabled");
+        LaneQueue queue = lanes.get(lane);
+        if (lane != Lane.CRITICAL && depth.incrementAndGet() > capacity) {
+            depth.decrementAndGet();
+            queue.rejected.incrementAndGet();
+            throw new RejectedExecutionException("Main thread queue is full");
+        }
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Task entry = new Task(() -> future.complete(task.get()), future, System.nanoTime());
+        queue.tasks.add(entry);
+        // Raced with stop(), which may have missed this task
+        if (stopped && queue.tasks.remove(entry)) {
+            future.completeExceptionally(new RejectedExecutionException("Plugin is disabled"));
+        }
+        return future;
+    }
+
+    /**
+     * @see #submit(Lane, Supplier)
+     */
+    public CompletableFuture<Void> execute(Lane lane, Runnable task) {
+        return submit(lane, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    private void drain() {
+        long start = System.nanoTime();
+        drain:
+        for (Lane lane : Lane.values()) {
+            LaneQueue queue = lanes.get(lane);
+            Task task;
+            while ((task = queue.tasks.poll()) != null) {
+                if (lane != Lane.CRITICAL) depth.decrementAndGet();
+                long wait = System.nanoTime() - task.enqueuedAt;
+                queue.recordWait(wait);
+                PluginEvents.MainThreadTask event = new PluginEvents.MainThreadTask();
+                event.begin();
+                try {
+                    task.body.run();
+                } catch (RuntimeException e) {
+                    task.future.completeExceptionally(e);
+                    plugin.getLogger().warning("Error running main thread task: " + e.getMessage());
+                }
+                event.finish(lane, wait);
+                queue.executed.incrementAndGet();
+                if (System.nanoTime() - start >= budgetNanos) {
+                    ticksOverBudget.incrementAndGet();
+                    break drain;
+                }
+            }
+        }
+        lastDrainNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Stop draining and fail every queued task
+     */
+    public void stop() {
+        stopped = true;
+        if (drainTask != null && !drainTask.isCancelled()) {
+            drainTask.cancel();
+        }
+        for (LaneQueue queue : lanes.values()) {
+            Task task;
+            while ((task = queue.tasks.poll()) != null) {
+                task.future.completeExceptionally(new RejectedExecutionException("Plugin is disabled"));
+            }
+        }
+        depth.set(0);
+    }
+
+    /**
+     * Write queue depth, rejections and wait times per lane
+     */
+    public void writeStats(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("budgetMicros").value(TimeUnit.NANOSECONDS.toMicros(budgetNanos));
+        writer.name("capacity").value(capacity);
+        writer.name("depth").value(depth.get());
+        writer.name("ticksOverBudget").value(ticksOverBudget.get());
+        writer.name("lastDrainMicros").value(TimeUnit.NANOSECONDS.toMicros(lastDrainNanos));
+        writer.name("lanes").beginObject();
+        for (Map.Entry<Lane, LaneQueue> entry : lanes.entrySet()) {
+            writer.name(entry.getKey().name().toLowerCase(Locale.ROOT));
+            entry.getValue().writeStats(writer);
+        }
+        writer.endObject();
+        writer.endObject();
+    }
+
+    private record Task(Runnable body, CompletableFuture<?> future, long enqueuedAt) {
+    }
+
+    private static class LaneQueue {
+        private final Queue<Task> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicLong executed = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        // Wait times of the last WAIT_SAMPLES tasks, only written on the main thread
+        private final AtomicLongArray waits = new AtomicLongArray(WAIT_SAMPLES);
+        private volatile long waitCount;
+
+        private void recordWait(long nanos) {
+            waits.set((int) (waitCount++ % WAIT_SAMPLES), nanos);
+        }
+
+        private void writeStats(JsonWriter writer) throws IOException {
+            int samples = (int) Math.min(waitCount, WAIT_SAMPLES);
+            long[] sorted = new long[samples];
+            for (int i = 0; i < samples; i++) {
+                sorted[i] = waits.get(i);
+            }
+            Arrays.sort(sorted);
+
+            writer.beginObject();
+            writer.name("depth").value(tasks.size());
+            writer.name("executed").value(executed.get());
+            writer.name("rejected").value(rejected.get());
+            writer.name("waitP50Micros").value(percentileMicros(sorted, 0.50));
+            writer.name("waitP99Micros").value(percentileMicros(sorted, 0.99));
+            writer.name("waitMaxMicros").value(percentileMicros(sorted, 1.0));
+            writer.endObject();
+        }
+
+        private static long percentileMicros(long[] sorted, double percentile) {
+            if (sorted.length == 0) return 0;
+            int index = (int) Math.min(sorted.length - 1, Math.ceil(sorted.length * percentile) - 1);
+            return TimeUnit.NANOSECONDS.toMicros(sorted[Math.max(0, index)]);
+        }
+    }
+}
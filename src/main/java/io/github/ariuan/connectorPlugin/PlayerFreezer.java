@@ -0,0 +1,208 @@
+package io.github.ariuan.connectorPlugin;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.NamespacedKey;
+import org.bukkit.attribute.Attribute;
+import org.bukkit.attribute.AttributeInstance;
+import org.bukkit.attribute.AttributeModifier;
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.inventory.EquipmentSlotGroup;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataType;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps unverified players in place.
+ * ATTRIBUTE mode zeroes movement and jump strength so the client never moves in the first place,
+ * with a low-frequency snapshot check for knockback or water currents.
+ * CANCEL mode is the old behavior of cancelling every PlayerMoveEvent.
+ * <p>
+ * Fly speed has no attribute for players and is saved with the player data, so the original speed is kept in the
+ * player's persistent data while frozen and {@link #repairFlySpeed(Player)} restores it after a crash.
+ */
+public class PlayerFreezer {
+    public enum FreezeMode {
+        ATTRIBUTE,
+        CANCEL;
+
+        public static FreezeMode parse(String value) {
+            try {
+                return FreezeMode.valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException | NullPointerException e) {
+                return ATTRIBUTE;
+            }
+        }
+    }
+
+    private static final long SNAPSHOT_CHECK_PERIOD_TICKS = 10;
+    private static final double MAX_DRIFT_SQUARED = 0.5 * 0.5;
+
+    private final Plugin plugin;
+    private final FreezeMode mode;
+    private final NamespacedKey modifierKey;
+    private final NamespacedKey flySpeedKey;
+    private final Map<UUID, FrozenPlayer> frozenPlayers = new ConcurrentHashMap<>();
+    private BukkitTask snapshotTask;
+
+    public PlayerFreezer(Plugin plugin, FreezeMode mode) {
+        this.plugin = plugin;
+        this.mode = mode;
+        this.modifierKey = new NamespacedKey(plugin, "verification_freeze");
+        this.flySpeedKey = new NamespacedKey(plugin, "frozen_fly_speed");
+        if (mode == FreezeMode.ATTRIBUTE) {
+            snapshotTask = Bukkit.getScheduler().runTaskTimer(plugin, this::checkSnapshots, SNAPSHOT_CHECK_PERIOD_TICKS, SNAPSHOT_CHECK_PERIOD_TICKS);
+        }
+    }
+
+    public FreezeMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Stop a player from moving until {@link #unfreeze(Player)} is called. Must be called on the main thread.
+     */
+    public void freeze(Player player) {
+        // A speed left over from a crash is the real one, the current speed would be the frozen 0
+        PersistentDataContainer data = player.getPersistentDataContainer();
+        float flySpeed = data.getOrDefault(flySpeedKey, PersistentDataType.FLOAT, player.getFlySpeed());
+        FrozenPlayer frozen = new FrozenPlayer(player.getLocation(), flySpeed);
+        if (frozenPlayers.putIfAbsent(player.getUniqueId(), frozen) != null) return;
+        if (mode != FreezeMode.ATTRIBUTE) return;
+
+        addFreezeModifier(player, Attribute.MOVEMENT_SPEED);
+        addFreezeModifier(player, Attribute.JUMP_STRENGTH);
+        data.set(flySpeedKey, PersistentDataType.FLOAT, flySpeed);
+        player.setFlySpeed(0);
+    }
+
+    /**
+     * Release a frozen player and log how much movement handling the freeze cost. Must be called on the main thread.
+     */
+    public void unfreeze(Player player) {
+        FrozenPlayer frozen = frozenPlayers.remove(player.getUniqueId());
+        if (frozen == null) return;
+
+        if (mode == FreezeMode.ATTRIBUTE) {
+            removeFreezeModifier(player, Attribute.MOVEMENT_SPEED);
+            removeFreezeModifier(player, Attribute.JUMP_STRENGTH);
+            player.setFlySpeed(frozen.flySpeed);
+            player.getPersistentDataContainer().remove(flySpeedKey);
+        }
+
+        double seconds = Math.max(0.001, (System.currentTimeMillis() - frozen.frozenAt) / 1000.0);
+        plugin.getLogger().info(String.format(Locale.ROOT, "Unfroze %s after %.1fs (%s mode): %.1f move events/s, %.1f corrections/s",
+                player.getName(), seconds, mode.name().toLowerCase(Locale.ROOT), frozen.moveEvents / seconds, frozen.corrections / seconds));
+    }
+
+    /**
+     * Restore the fly speed of a player who was frozen when the server stopped without unfreezing them.
+     * Must be called on the main thread when the player joins.
+     */
+    public void repairFlySpeed(Player player) {
+        if (frozenPlayers.containsKey(player.getUniqueId())) return;
+        PersistentDataContainer data = player.getPersistentDataContainer();
+        Float flySpeed = data.get(flySpeedKey, PersistentDataType.FLOAT);
+        if (flySpeed == null) return;
+        player.setFlySpeed(flySpeed);
+        data.remove(flySpeedKey);
+        plugin.getLogger().info("Restored fly speed of " + player.getName() + " after an unclean shutdown");
+    }
+
+    /**
+     * Handle a move event of an unverified player
+     */
+    public void handleMove(PlayerMoveEvent event) {
+        FrozenPlayer frozen = frozenPlayers.get(event.getPlayer().getUniqueId());
+        if (frozen != null) {
+            frozen.moveEvents++;
+        }
+        // In ATTRIBUTE mode the client can't walk, rotations are harmless and drift is handled by the snapshot check
+        if (mode == FreezeMode.CANCEL || frozen == null) {
+            event.setCancelled(true);
+            if (frozen != null) {
+                frozen.corrections++;
+            }
+        }
+    }
+
+    /**
+     * Stop the periodic snapshot check while nobody can be frozen, such as during hibernation
+     */
+    public void pauseSnapshots() {
+        if (snapshotTask != null && !snapshotTask.isCancelled()) {
+            snapshotTask.cancel();
+        }
+    }
+
+    public void resumeSnapshots() {
+        if (mode == FreezeMode.ATTRIBUTE && (snapshotTask == null || snapshotTask.isCancelled())) {
+            snapshotTask = Bukkit.getScheduler().runTaskTimer(plugin, this::checkSnapshots, SNAPSHOT_CHECK_PERIOD_TICKS, SNAPSHOT_CHECK_PERIOD_TICKS);
+        }
+    }
+
+    public void cleanup() {
+        if (snapshotTask != null && !snapshotTask.isCancelled()) {
+            snapshotTask.cancel();
+        }
+        for (UUID uuid : frozenPlayers.keySet()) {
+            Player player = Bukkit.getPlayer(uuid);
+            if (player != null) {
+                unfreeze(player);
+            }
+        }
+        frozenPlayers.clear();
+    }
+
+    private void checkSnapshots() {
+        for (Map.Entry<UUID, FrozenPlayer> entry : frozenPlayers.entrySet()) {
+            Player player = Bukkit.getPlayer(entry.getKey());
+            if (player == null) continue;
+            FrozenPlayer frozen = entry.getValue();
+            Location location = player.getLocation();
+            if (location.getWorld() != frozen.location.getWorld()) continue;
+
+            double dx = location.getX() - frozen.location.getX();
+            double dz = location.getZ() - frozen.location.getZ();
+            if (dx * dx + dz * dz > MAX_DRIFT_SQUARED) {
+                player.teleport(frozen.location.clone().setYaw(location.getYaw()).setPitch(location.getPitch()));
+                frozen.corrections++;
+            }
+        }
+    }
+
+    private void addFreezeModifier(Player player, Attribute attribute) {
+        AttributeInstance instance = player.getAttribute(attribute);
+        if (instance == null) return;
+        instance.removeModifier(modifierKey);
+        instance.addTransientModifier(new AttributeModifier(modifierKey, -1, AttributeModifier.Operation.MULTIPLY_SCALAR_1, EquipmentSlotGroup.ANY));
+    }
+
+    private void removeFreezeModifier(Player player, Attribute attribute) {
+        AttributeInstance instance = player.getAttribute(attribute);
+        if (instance != null) {
+            instance.removeModifier(modifierKey);
+        }
+    }
+
+    private static class FrozenPlayer {
+        private final Location location;
+        private final float flySpeed;
+        private final long frozenAt = System.currentTimeMillis();
+        // Only touched on the main thread
+        private long moveEvents;
+        private long corrections;
+
+        private FrozenPlayer(Location location, float flySpeed) {
+            this.location = location;
+            this.flySpeed = flySpeed;
+        }
+    }
+}
@@ -20,9 +20,11 @@ import org.bukkit.scheduler.BukkitScheduler;
 
 public class PlayerRestrictionListener implements Listener {
     private final PlayerVerificationManager verificationManager;
+    private final PlayerFreezer freezer;
 
-    public PlayerRestrictionListener(PlayerVerificationManager verificationManager) {
+    public PlayerRestrictionListener(PlayerVerificationManager verificationManager, PlayerFreezer freezer) {
         this.verificationManager = verificationManager;
+        this.freezer = freezer;
     }
 
     @EventHandler(priority = EventPriority.HIGHEST)
@@ -94,7 +96,7 @@ public class PlayerRestrictionListener implements Listener {
     public void onPlayerMove(PlayerMoveEvent event) {
         Player player = event.getPlayer();
         if (!verificationManager.isVerified(player.getUniqueId())) {
-            event.setCancelled(true);
+            freezer.handleMove(event);
         }
     }
 
@@ -1,36 +1,65 @@
 package io.github.ariuan.connectorPlugin;
 
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.plugin.Plugin;
 import org.bukkit.scheduler.BukkitTask;
 
 import java.io.IOException;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URI;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class PlayerVerificationManager {
-    private final ConnectorPlugin plugin;
-    private final String apiUrl;
+    private final Plugin plugin;
+    private final PlayerFreezer freezer;
+    private final BackendClient backendClient;
+    private final MainThreadExecutor mainThread;
     private final int serverPort;
     private final long periodTick;
+    private final long leaseRenewMarginMillis;
+    private final long heartbeatMinSeconds;
+    private final long heartbeatMaxSeconds;
+    private final boolean preLoginVerification;
+    private final boolean denyUnverifiedAtLogin;
+    private final SharedVerificationTable sharedTable;
+    private final long sharedTtlMillis;
+    private volatile boolean sharedTableFullLogged;
+    private final EventPublisher eventPublisher;
     private final Map<UUID, PlayerSession> playerSessions = new ConcurrentHashMap<>();
     private final Map<UUID, BukkitTask> monitoringTasks = new ConcurrentHashMap<>();
-
-    public PlayerVerificationManager(ConnectorPlugin plugin, String apiUrl, long periodTick) {
+    private final Map<UUID, BukkitTask> leaseKickTasks = new ConcurrentHashMap<>();
+    private final Map<UUID, PreLoginResult> preLoginResults = new ConcurrentHashMap<>();
+    private static final long PRE_LOGIN_RESULT_TTL_MILLIS = 30 * 1000; // Pre-login results are only trusted for the join that follows
+    private static final long LEASE_RETRY_TICKS = 20 * 10; // Retry a failed lease renewal after 10 seconds
+    private static final String CREDITS_KICK_MESSAGE = "You have not enough credits to play on the server!";
+    private static final String NOT_LINKED_MESSAGE = "You have not linked your account to Discord yet! Please use /link in the Discord!";
+
+    public PlayerVerificationManager(Plugin plugin, PlayerFreezer freezer, BackendClient backendClient, MainThreadExecutor mainThread, long periodTick, long leaseRenewMarginSeconds, long heartbeatMinSeconds, long heartbeatMaxSeconds,
+                                     boolean preLoginVerification, boolean denyUnverifiedAtLogin, SharedVerificationTable sharedTable, long sharedTtlSeconds,
+                                     EventPublisher eventPublisher) {
         this.plugin = plugin;
-        this.apiUrl = apiUrl;
+        this.freezer = freezer;
+        this.backendClient = backendClient;
+        this.mainThread = mainThread;
         this.serverPort = Bukkit.getServer().getPort();
         this.periodTick = periodTick;
+        this.leaseRenewMarginMillis = leaseRenewMarginSeconds * 1000;
+        this.heartbeatMinSeconds = heartbeatMinSeconds;
+        this.heartbeatMaxSeconds = Math.max(heartbeatMinSeconds, heartbeatMaxSeconds);
+        this.preLoginVerification = preLoginVerification;
+        this.denyUnverifiedAtLogin = denyUnverifiedAtLogin;
+        this.sharedTable = sharedTable;
+        this.sharedTtlMillis = sharedTtlSeconds * 1000;
+        this.eventPublisher = eventPublisher;
     }
 
     private void hidePlayer(Player player) {
@@ -40,6 +69,19 @@ public class PlayerVerificationManager {
         }
     }
 
+    /**
+     * Hide only the players that are still waiting for verification, used for players verified before joining
+     */
+    private void hideUnverifiedPlayers(Player player) {
+        for (Player otherPlayer : Bukkit.getOnlinePlayers()) {
+            if (otherPlayer.getUniqueId().equals(player.getUniqueId()) || isVerified(otherPlayer.getUniqueId())) {
+                continue;
+            }
+            otherPlayer.hidePlayer(plugin, player);
+            player.hidePlayer(plugin, otherPlayer);
+        }
+    }
+
     private void showPlayer(Player player) {
         for (Player otherPlayer : Bukkit.getOnlinePlayers()) {
             if (otherPlayer.getUniqueId().equals(player.getUniqueId())) {
@@ -53,114 +95,289 @@ public class PlayerVerificationManager {
 
     }
 
+    /**
+     * Verify a player while they are still logging in, off the main thread.
+     * The result is cached for the join that follows so the player never sees the frozen state.
+     */
+    public void handlePreLogin(AsyncPlayerPreLoginEvent event) {
+        if (!preLoginVerification || event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) return;
+
+        long now = System.currentTimeMillis();
+        preLoginResults.values().removeIf(cached -> cached.isExpired(now));
+
+        UUID uuid = event.getUniqueId();
+        try {
+            VerifyResult result = verify(uuid, event.getName());
+            if (!result.verified() && denyUnverifiedAtLogin) {
+                plugin.getLogger().info("Denied login of unverified player " + event.getName() + " (" + uuid + ")");
+                event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER, Component.text(NOT_LINKED_MESSAGE).color(NamedTextColor.DARK_RED));
+                return;
+            }
+            preLoginResults.put(uuid, new PreLoginResult(result, now));
+        } catch (Exception e) {
+            // Leave it to the join-time verification, which kicks on errors
+            plugin.getLogger().warning("Error pre-verifying player " + event.getName() + ": " + e.getMessage());
+        }
+    }
+
     public void verifyPlayer(Player player) {
         UUID uuid = player.getUniqueId();
-        plugin.getLogger().info("Verifying player: " + player.getName() + " (" + uuid + ")");
-
-        hidePlayer(player);
+        freezer.repairFlySpeed(player);
 
         // Create a new session for the player
         PlayerSession session = new PlayerSession();
         playerSessions.put(uuid, session);
 
+        PreLoginResult cached = preLoginResults.remove(uuid);
+        if (cached != null && !cached.isExpired(System.currentTimeMillis())) {
+            plugin.getLogger().info("Using pre-login verification for player: " + player.getName() + " (" + uuid + ")");
+            if (cached.result().verified()) {
+                hideUnverifiedPlayers(player);
+            } else {
+                hidePlayer(player);
+                freezer.freeze(player);
+            }
+            applyVerifyResult(player, session, cached.result());
+            return;
+        }
+
+        plugin.getLogger().info("Verifying player: " + player.getName() + " (" + uuid + ")");
+        hidePlayer(player);
+        freezer.freeze(player);
+
         // Call /verify endpoint asynchronously
         Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
             try {
-                boolean verified = callVerifyEndpoint(player);
+                VerifyResult result = verify(uuid, player.getName());
 
                 // Update session on main thread
-                Bukkit.getScheduler().runTask(plugin, () -> {
-                    if (verified) {
-                        session.setVerified(true);
-                        player.sendMessage("Welcome back to the server!");
-                        plugin.getLogger().info("Player " + player.getName() + " verified successfully");
-                        showPlayer(player);
-                        // Start monitoring task
-                        startMonitoring(player);
-                    } else {
-                        player.sendMessage(Component.text("You have not linked your account to Discord yet! Please use /link in the Discord!").color(NamedTextColor.DARK_RED));
-                    }
-                });
+                mainThread.execute(MainThreadExecutor.Lane.CRITICAL, () -> applyVerifyResult(player, session, result));
             } catch (Exception e) {
                 plugin.getLogger().severe("Error verifying player " + player.getName() + ": " + e.getMessage());
-                Bukkit.getScheduler().runTask(plugin, () -> player.kick(Component.text("Verification error. Please try again later or contact the administrator.")));
+                mainThread.execute(MainThreadExecutor.Lane.CRITICAL, () -> player.kick(Component.text("Verification error. Please try again later or contact the administrator.")));
             }
         });
     }
 
-    private boolean callVerifyEndpoint(Player player) throws IOException {
-        String endpoint = apiUrl + "/verify";
-        URL url = URI.create(endpoint).toURL();
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-
-        try {
-            conn.setRequestMethod("POST");
-            conn.setRequestProperty("Content-Type", "application/json");
-            conn.setDoOutput(true);
-            conn.setConnectTimeout(5000);
-            conn.setReadTimeout(5000);
-
-            JsonObject json = new JsonObject();
-            UUID uuid = player.getUniqueId();
-            json.addProperty("uuid", uuid.toString());
-            json.addProperty("playerName", player.getName());
-            json.addProperty("serverPort", serverPort);
-
-            try (OutputStream os = conn.getOutputStream()) {
-                byte[] input = json.toString().getBytes(StandardCharsets.UTF_8);
-                os.write(input, 0, input.length);
+    private void applyVerifyResult(Player player, PlayerSession session, VerifyResult result) {
+        if (result.verified()) {
+            session.setVerified(true);
+            if (result.leaseExpiresAt() > 0) {
+                applyLease(player, session, result.leaseExpiresAt());
             }
+            player.sendMessage("Welcome back to the server!");
+            plugin.getLogger().info("Player " + player.getName() + " verified successfully");
+            freezer.unfreeze(player);
+            showPlayer(player);
+            // Start monitoring task
+            startMonitoring(player);
+        } else {
+            player.sendMessage(Component.text(NOT_LINKED_MESSAGE).color(NamedTextColor.DARK_RED));
+        }
+    }
 
-            int responseCode = conn.getResponseCode();
-            if (responseCode == 200) {
-                // Read response
-                String response = new String(conn.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
-                JsonObject responseJson = JsonParser.parseString(response).getAsJsonObject();
-                return responseJson.has("verified") && responseJson.get("verified").getAsBoolean();
-            }
-            return false;
-        } finally {
-            conn.disconnect();
+    /**
+     * Verify a player with the backend, unless another instance on this host verified them recently.
+     * A shared verification carries no lease, so monitoring starts with an immediate /play call that checks the credits.
+     */
+    private VerifyResult verify(UUID uuid, String playerName) throws IOException {
+        if (sharedTable != null && sharedTable.getVerifiedUntil(uuid) > System.currentTimeMillis()) {
+            plugin.getLogger().info("Player " + playerName + " (" + uuid + ") was verified by another instance");
+            publishVerification(uuid, playerName, true, "shared");
+            return new VerifyResult(true, 0);
         }
+        VerifyResult result = callVerifyEndpoint(uuid, playerName);
+        share(uuid, result.verified(), result.leaseExpiresAt());
+        publishVerification(uuid, playerName, result.verified(), "verify");
+        return result;
+    }
+
+    /**
+     * @param source verify for a /verify result, shared for one from another instance, play when /play revoked it
+     */
+    private void publishVerification(UUID uuid, String playerName, boolean verified, String source) {
+        if (eventPublisher == null) return;
+        JsonObject event = EventPublisher.event("verification", uuid, playerName);
+        event.addProperty("verified", verified);
+        event.addProperty("source", source);
+        eventPublisher.publish(event);
+    }
+
+    /**
+     * Publish a verification to the other instances on this host
+     *
+     * @param leaseExpiresAt The credit lease, which bounds the shared verification, or 0 to share it for the configured TTL
+     */
+    private void share(UUID uuid, boolean verified, long leaseExpiresAt) {
+        if (sharedTable == null) return;
+        if (!verified) {
+            sharedTable.revoke(uuid);
+            return;
+        }
+        long verifiedUntil = leaseExpiresAt > 0 ? leaseExpiresAt : System.currentTimeMillis() + sharedTtlMillis;
+        if (!sharedTable.extend(uuid, verifiedUntil) && !sharedTableFullLogged) {
+            sharedTableFullLogged = true;
+            plugin.getLogger().warning("Shared verification table is full, raise shared-verification-slots");
+        }
+    }
+
+    private VerifyResult callVerifyEndpoint(UUID uuid, String playerName) throws IOException {
+        JsonObject json = new JsonObject();
+        json.addProperty("uuid", uuid.toString());
+        json.addProperty("playerName", playerName);
+        json.addProperty("serverPort", serverPort);
+
+        // Hedged so a single stalled backend node doesn't hold up joins
+        BackendClient.BackendResponse response = post("/verify", uuid, json, true);
+        if (response.isOk()) {
+            JsonObject responseJson = response.json();
+            boolean verified = responseJson.has("verified") && responseJson.get("verified").getAsBoolean();
+            return new VerifyResult(verified, parseLeaseExpiry(responseJson));
+        }
+        return new VerifyResult(false, 0);
     }
 
     private void startMonitoring(Player player) {
-        UUID uuid = player.getUniqueId();
-        PlayerSession session = playerSessions.get(uuid);
+        PlayerSession session = playerSessions.get(player.getUniqueId());
         if (session == null) return;
 
-        // Create a repeating task that runs every 30 minutes (36000 ticks)
-        BukkitTask task = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, () -> {
-            if (!player.isOnline()) {
-                stopMonitoring(player);
+        // With a lease the first check can wait until renewal, otherwise report right away
+        scheduleHeartbeat(player, session, session.hasLease() ? nextHeartbeatDelay(session, 0) : 0);
+    }
+
+    /**
+     * Schedule the next /play call for a player, replacing any pending one
+     *
+     * @param delayTicks Delay in ticks before the call
+     */
+    private void scheduleHeartbeat(Player player, PlayerSession session, long delayTicks) {
+        UUID uuid = player.getUniqueId();
+        // The player quit or rejoined while the previous heartbeat was running, or the server is stopping
+        if (playerSessions.get(uuid) != session || session.isReported()) return;
+
+        BukkitTask task = Bukkit.getScheduler().runTaskLaterAsynchronously(plugin, () -> heartbeat(player, session), delayTicks);
+        BukkitTask previous = monitoringTasks.put(uuid, task);
+        if (previous != null && !previous.isCancelled()) {
+            previous.cancel();
+        }
+    }
+
+    private void heartbeat(Player player, PlayerSession session) {
+        if (!player.isOnline()) {
+            stopMonitoring(player);
+            return;
+        }
+
+        long nextCheckSeconds = 0;
+        try {
+            PlayResult result = callPlayEndpoint(player, session.getOnlineTime(), false);
+            nextCheckSeconds = result.nextCheckSeconds();
+
+            // A failed call says nothing about the player, so the shared entry is left to expire
+            if (result.ok()) {
+                share(player.getUniqueId(), !result.kick(), result.leaseExpiresAt());
+            }
+            if (result.kick()) {
+                publishVerification(player.getUniqueId(), player.getName(), false, "play");
+                mainThread.execute(MainThreadExecutor.Lane.CRITICAL, () -> {
+                    if (player.isOnline()) {
+                        player.kick(Component.text(CREDITS_KICK_MESSAGE));
+                        plugin.getLogger().info("Kicked player " + player.getName() + " due to play endpoint response");
+                    }
+                });
                 return;
             }
+            if (result.leaseExpiresAt() > 0) {
+                applyLease(player, session, result.leaseExpiresAt());
+            } else if (result.ok() && session.hasLease()) {
+                // Backend stopped handing out leases, fall back to fixed polling
+                clearLease(player.getUniqueId(), session);
+            }
+        } catch (Exception e) {
+            plugin.getLogger().warning("Error calling play endpoint for " + player.getName() + ": " + e.getMessage());
+        }
+        scheduleHeartbeat(player, session, nextHeartbeatDelay(session, nextCheckSeconds));
+    }
 
-            long onlineTime = session.getOnlineTime();
+    /**
+     * Work out when to call /play next.
+     * A backend hint is clamped to the configured heartbeat bounds and wins over the fixed period,
+     * an active lease caps the delay so it is renewed before it expires.
+     *
+     * @param nextCheckSeconds The nextCheckSeconds hint of the last /play response, or 0 if none
+     * @return Delay in ticks
+     */
+    private long nextHeartbeatDelay(PlayerSession session, long nextCheckSeconds) {
+        long delay = periodTick;
+        if (nextCheckSeconds > 0) {
+            delay = Math.max(heartbeatMinSeconds, Math.min(heartbeatMaxSeconds, nextCheckSeconds)) * 20;
+        }
+        if (!session.hasLease()) return delay;
 
-            try {
-                boolean shouldKick = callPlayEndpoint(player, onlineTime, false);
-
-                if (shouldKick) {
-                    Bukkit.getScheduler().runTask(plugin, () -> {
-                        if (player.isOnline()) {
-                            player.kick(Component.text("You have not enough credits to play on the server!"));
-                            plugin.getLogger().info("Kicked player " + player.getName() + " due to play endpoint response");
-                        }
-                    });
-                }
-            } catch (Exception e) {
-                plugin.getLogger().warning("Error calling play endpoint for " + player.getName() + ": " + e.getMessage());
+        long renewInMillis = session.getLeaseExpiresAt() - leaseRenewMarginMillis - System.currentTimeMillis();
+        long renewDelay = Math.max(LEASE_RETRY_TICKS, renewInMillis / 50);
+        return nextCheckSeconds > 0 ? Math.min(delay, renewDelay) : renewDelay;
+    }
+
+    /**
+     * Schedule a local kick at the lease deadline, replacing the previous deadline
+     *
+     * @param leaseExpiresAt Epoch milliseconds at which the player runs out of credits
+     */
+    private void applyLease(Player player, PlayerSession session, long leaseExpiresAt) {
+        UUID uuid = player.getUniqueId();
+        session.setLeaseExpiresAt(leaseExpiresAt);
+        // Rounded up so the task doesn't run before the deadline
+        long delayTicks = Math.max(1, (leaseExpiresAt - System.currentTimeMillis() + 49) / 50);
+
+        BukkitTask task = Bukkit.getScheduler().runTaskLater(plugin, () -> {
+            // Only kick if the lease was not renewed or cleared in the meantime
+            if (playerSessions.get(uuid) != session || session.getLeaseExpiresAt() != leaseExpiresAt) return;
+            if (leaseExpiresAt > System.currentTimeMillis()) {
+                // Ticks catching up after lag can still run it early, wait for the rest
+                applyLease(player, session, leaseExpiresAt);
+                return;
             }
-        }, 0, periodTick);
+            if (player.isOnline()) {
+                player.kick(Component.text(CREDITS_KICK_MESSAGE));
+                plugin.getLogger().info("Kicked player " + player.getName() + " due to expired credit lease");
+            }
+        }, delayTicks);
+        BukkitTask previous = leaseKickTasks.put(uuid, task);
+        if (previous != null && !previous.isCancelled()) {
+            previous.cancel();
+        }
+    }
 
-        monitoringTasks.put(uuid, task);
+    private void clearLease(UUID uuid, PlayerSession session) {
+        session.setLeaseExpiresAt(0);
+        BukkitTask task = leaseKickTasks.remove(uuid);
+        if (task != null && !task.isCancelled()) {
+            task.cancel();
+        }
+    }
+
+    /**
+     * Read the optional lease from a /verify or /play response.
+     * The backend may send either "leaseExpiresAt" (epoch milliseconds) or "leaseSeconds" (remaining playable time).
+     *
+     * @return the lease deadline in epoch milliseconds, or 0 if the response has no lease
+     */
+    private long parseLeaseExpiry(JsonObject responseJson) {
+        if (responseJson.has("leaseExpiresAt")) {
+            return responseJson.get("leaseExpiresAt").getAsLong();
+        }
+        if (responseJson.has("leaseSeconds")) {
+            return System.currentTimeMillis() + responseJson.get("leaseSeconds").getAsLong() * 1000;
+        }
+        return 0;
     }
 
     private void sendFinalOnlineTime(Player player) {
         UUID uuid = player.getUniqueId();
         PlayerSession session = playerSessions.get(uuid);
-        if (session == null) return;
+        // Already sent by flushSessions
+        if (session == null || session.isReported()) return;
         var onlineTime = session.getOnlineTime();
         Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
             try {
@@ -172,60 +389,156 @@ public class PlayerVerificationManager {
     }
 
 
-    private boolean callPlayEndpoint(Player player, long onlineTime, boolean disconnect) throws IOException {
-        String endpoint = apiUrl + "/play";
-        URL url = URI.create(endpoint).toURL();
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+    private JsonObject playRequest(UUID uuid, String playerName, long onlineTime, boolean disconnect) {
+        JsonObject json = new JsonObject();
+        json.addProperty("uuid", uuid.toString());
+        json.addProperty("playerName", playerName);
+        json.addProperty("serverPort", serverPort);
+        json.addProperty("onlineTime", onlineTime);
+        json.addProperty("disconnect", disconnect);
+        return json;
+    }
 
+    /**
+     * POST a per-player request, recording it as a JFR event
+     */
+    private BackendClient.BackendResponse post(String path, UUID uuid, JsonObject json, boolean hedged) throws IOException {
+        PluginEvents.BackendCall event = new PluginEvents.BackendCall();
+        event.begin();
+        int status = -1;
         try {
-            conn.setRequestMethod("POST");
-            conn.setRequestProperty("Content-Type", "application/json");
-            conn.setDoOutput(true);
-            conn.setConnectTimeout(5000);
-            conn.setReadTimeout(5000);
-
-            JsonObject json = new JsonObject();
-            UUID uuid = player.getUniqueId();
-            json.addProperty("uuid", uuid.toString());
-            json.addProperty("playerName", player.getName());
-            json.addProperty("serverPort", serverPort);
-            json.addProperty("onlineTime", onlineTime);
-            json.addProperty("disconnect", disconnect);
-
-            try (OutputStream os = conn.getOutputStream()) {
-                byte[] input = json.toString().getBytes(StandardCharsets.UTF_8);
-                os.write(input, 0, input.length);
+            BackendClient.BackendResponse response = hedged ? backendClient.postHedged(path, json) : backendClient.post(path, json);
+            status = response.code();
+            return response;
+        } finally {
+            event.finish(path, uuid, status);
+        }
+    }
+
+    private PlayResult callPlayEndpoint(Player player, long onlineTime, boolean disconnect) throws IOException {
+        JsonObject json = playRequest(player.getUniqueId(), player.getName(), onlineTime, disconnect);
+
+        BackendClient.BackendResponse response = post("/play", player.getUniqueId(), json, false);
+        if (response.isOk()) {
+            if (disconnect) return new PlayResult(true, true, 0, 0);
+            JsonObject responseJson = response.json();
+            boolean kick = responseJson.has("kick") && responseJson.get("kick").getAsBoolean();
+            long nextCheckSeconds = responseJson.has("nextCheckSeconds") ? responseJson.get("nextCheckSeconds").getAsLong() : 0;
+            return new PlayResult(true, kick, parseLeaseExpiry(responseJson), nextCheckSeconds);
+        }
+        return new PlayResult(false, false, 0, 0);
+    }
+
+    /**
+     * Re-check a player against the backend right away instead of waiting for the next heartbeat.
+     * Verified players get an immediate /play call, unverified players are verified again.
+     *
+     * @param player Online player to refresh, must be called on the main thread
+     */
+    public void refreshSession(Player player) {
+        UUID uuid = player.getUniqueId();
+        if (!isVerified(uuid)) {
+            verifyPlayer(player);
+            return;
+        }
+        PlayerSession session = playerSessions.get(uuid);
+        scheduleHeartbeat(player, session, 0);
+    }
+
+    /**
+     * Send the final /play report of every session in one /play/batch request and stop their heartbeats.
+     * Used while the server drains before stopping, the quit events that follow will not report again.
+     * Must be called on the main thread.
+     *
+     * @return a future that completes once the backend received the reports
+     */
+    public CompletableFuture<Void> flushSessions() {
+        JsonArray players = new JsonArray();
+        for (Map.Entry<UUID, PlayerSession> entry : playerSessions.entrySet()) {
+            PlayerSession session = entry.getValue();
+            if (session.isReported()) continue;
+            session.setReported();
+            Player player = Bukkit.getPlayer(entry.getKey());
+            players.add(playRequest(entry.getKey(), player != null ? player.getName() : null, session.getOnlineTime(), true));
+        }
+        cancelTasks();
+        if (players.isEmpty()) return CompletableFuture.completedFuture(null);
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            try {
+                sendFinalReports(players);
+                future.complete(null);
+            } catch (IOException | RuntimeException e) {
+                future.completeExceptionally(e);
             }
+        });
+        return future;
+    }
 
-            int responseCode = conn.getResponseCode();
-            if (responseCode == 200) {
-                if (disconnect) return true;
-                String response = new String(conn.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
-                JsonObject responseJson = JsonParser.parseString(response).getAsJsonObject();
-                return responseJson.has("kick") && responseJson.get("kick").getAsBoolean();
+    private void sendFinalReports(JsonArray players) throws IOException {
+        JsonObject json = new JsonObject();
+        json.addProperty("serverPort", serverPort);
+        json.add("players", players);
+        BackendClient.BackendResponse response = backendClient.post("/play/batch", json);
+        if (response.code() != 404) {
+            if (!response.isOk()) {
+                throw new IOException("/play/batch returned " + response.code());
             }
-            return false;
-        } finally {
-            conn.disconnect();
+            return;
         }
+        // Backend without the batch endpoint, fall back to one request per player in parallel
+        List<CompletableFuture<Void>> requests = new ArrayList<>();
+        for (int i = 0; i < players.size(); i++) {
+            JsonObject report = players.get(i).getAsJsonObject();
+            requests.add(CompletableFuture.runAsync(() -> {
+                try {
+                    backendClient.post("/play", report);
+                } catch (IOException e) {
+                    plugin.getLogger().warning("Error calling play endpoint (shutdown) for " + report.get("uuid").getAsString() + ": " + e.getMessage());
+                }
+            }));
+        }
+        CompletableFuture.allOf(requests.toArray(new CompletableFuture[0])).join();
     }
 
     public void stopMonitoring(Player player) {
         UUID uuid = player.getUniqueId();
         sendFinalOnlineTime(player);
+        freezer.unfreeze(player);
         BukkitTask task = monitoringTasks.remove(uuid);
         if (task != null && !task.isCancelled()) {
             task.cancel();
         }
+        BukkitTask leaseTask = leaseKickTasks.remove(uuid);
+        if (leaseTask != null && !leaseTask.isCancelled()) {
+            leaseTask.cancel();
+        }
         playerSessions.remove(uuid);
     }
 
+    /**
+     * @return number of players with a verified session
+     */
+    public int countVerified() {
+        int count = 0;
+        for (PlayerSession session : playerSessions.values()) {
+            if (session.isVerified()) count++;
+        }
+        return count;
+    }
+
     public boolean isVerified(UUID uuid) {
         PlayerSession session = playerSessions.get(uuid);
         return session != null && session.isVerified();
     }
 
     public void cleanup() {
+        cancelTasks();
+        playerSessions.clear();
+    }
+
+    private void cancelTasks() {
         // Cancel all monitoring tasks
         for (BukkitTask task : monitoringTasks.values()) {
             if (task != null && !task.isCancelled()) {
@@ -233,12 +546,34 @@ public class PlayerVerificationManager {
             }
         }
         monitoringTasks.clear();
-        playerSessions.clear();
+        for (BukkitTask task : leaseKickTasks.values()) {
+            if (task != null && !task.isCancelled()) {
+                task.cancel();
+            }
+        }
+        leaseKickTasks.clear();
+    }
+
+    private record VerifyResult(boolean verified, long leaseExpiresAt) {
+    }
+
+    private record PreLoginResult(VerifyResult result, long createdAt) {
+        boolean isExpired(long now) {
+            return now - createdAt > PRE_LOGIN_RESULT_TTL_MILLIS;
+        }
+    }
+
+    /**
+     * @param ok False if the backend answered with an error status, then the other fields carry no information
+     */
+    private record PlayResult(boolean ok, boolean kick, long leaseExpiresAt, long nextCheckSeconds) {
     }
 
     private static class PlayerSession {
         private final long joinTime;
         private volatile boolean verified;
+        private volatile long leaseExpiresAt;
+        private volatile boolean reported;
         private long lastJoinTime;
 
         public PlayerSession() {
@@ -258,5 +593,25 @@ public class PlayerVerificationManager {
         public void setVerified(boolean verified) {
             this.verified = verified;
         }
+
+        public boolean isReported() {
+            return reported;
+        }
+
+        public void setReported() {
+            this.reported = true;
+        }
+
+        public boolean hasLease() {
+            return leaseExpiresAt > 0;
+        }
+
+        public long getLeaseExpiresAt() {
+            return leaseExpiresAt;
+        }
+
+        public void setLeaseExpiresAt(long leaseExpiresAt) {
+            this.leaseExpiresAt = leaseExpiresAt;
+        }
     }
 }
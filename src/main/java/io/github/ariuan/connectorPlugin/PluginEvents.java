@@ -0,0 +1,184 @@
+package io.github.ariuan.connectorPlugin;
+
+import fi.iki.elonen.NanoHTTPD;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * JFR events of the plugin, all disabled unless a recording enables them, for example with the bundled connector.jfc.
+ * Fields are only filled in after shouldCommit(), so a disabled event costs little more than the allocation.
+ */
+public final class PluginEvents {
+    private static final String CATEGORY = "Connector Plugin";
+
+    private PluginEvents() {
+    }
+
+    @Name("io.github.ariuan.connectorPlugin.BackendCall")
+    @Label("Backend Call")
+    @Description("A /verify or /play request to the backend, the duration is its latency")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    @Enabled(false)
+    public static final class BackendCall extends Event {
+        @Label("Endpoint")
+        String endpoint;
+
+        @Label("Player UUID")
+        String uuid;
+
+        @Label("Status")
+        @Description("HTTP status, or -1 if the request failed")
+        int status;
+
+        void finish(String endpoint, UUID uuid, int status) {
+            end();
+            if (!shouldCommit()) return;
+            this.endpoint = endpoint;
+            this.uuid = uuid.toString();
+            this.status = status;
+            commit();
+        }
+    }
+
+    @Name("io.github.ariuan.connectorPlugin.HttpRequest")
+    @Label("HTTP Request")
+    @Description("A request to the plugin's HTTP server, until the response is ready to be sent")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    @Enabled(false)
+    public static final class HttpRequest extends Event {
+        @Label("Method")
+        String method;
+
+        @Label("Route")
+        String route;
+
+        @Label("Status")
+        int status;
+
+        @Label("Body Size")
+        @Description("Response body size, or -1 if unknown")
+        @DataAmount
+        long bytes;
+
+        void finish(String method, String route, NanoHTTPD.Response response) {
+            end();
+            if (!shouldCommit()) return;
+            this.method = method;
+            this.route = route;
+            this.status = response.getStatus().getRequestStatus();
+            // Every response is built from an in-memory body, so what's available is its full size
+            try {
+                this.bytes = response.getData() != null ? response.getData().available() : 0;
+            } catch (IOException e) {
+                this.bytes = -1;
+            }
+            commit();
+        }
+    }
+
+    @Name("io.github.ariuan.connectorPlugin.LogCapture")
+    @Label("Log Capture")
+    @Description("A log record handled by the capture handler")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    @Enabled(false)
+    public static final class LogCapture extends Event {
+        @Label("Logger")
+        String logger;
+
+        @Label("Level")
+        String level;
+
+        @Label("Outcome")
+        @Description("captured, collapsed into the previous entry or suppressed by a rate limit")
+        String outcome;
+
+        void finish(String logger, String level, String outcome) {
+            end();
+            if (!shouldCommit()) return;
+            this.logger = logger;
+            this.level = level;
+            this.outcome = outcome;
+            commit();
+        }
+    }
+
+    @Name("io.github.ariuan.connectorPlugin.LogWrite")
+    @Label("Log Write")
+    @Description("A captured entry appended to the log store and search index")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    @Enabled(false)
+    public static final class LogWrite extends Event {
+        @Label("Success")
+        boolean success;
+
+        void finish(boolean success) {
+            end();
+            if (!shouldCommit()) return;
+            this.success = success;
+            commit();
+        }
+    }
+
+    @Name("io.github.ariuan.connectorPlugin.MainThreadTask")
+    @Label("Main Thread Task")
+    @Description("A queued task run on the main thread, such as a /runCommand dispatch, the duration is its run time")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    @Enabled(false)
+    public static final class MainThreadTask extends Event {
+        @Label("Lane")
+        String lane;
+
+        @Label("Queue Wait")
+        @Timespan(Timespan.NANOSECONDS)
+        long queueWait;
+
+        void finish(MainThreadExecutor.Lane lane, long queueWait) {
+            end();
+            if (!shouldCommit()) return;
+            this.lane = lane.name();
+            this.queueWait = queueWait;
+            commit();
+        }
+    }
+
+    @Name("io.github.ariuan.connectorPlugin.ShutdownTransition")
+    @Label("Shutdown Transition")
+    @Description("A state change of the shutdown manager")
+    @Category(CATEGORY)
+    @Enabled(false)
+    public static final class ShutdownTransition extends Event {
+        @Label("From")
+        String from;
+
+        @Label("To")
+        String to;
+
+        @Label("Tick Delay")
+        @Description("Ticks until the shutdown for a newly scheduled one, otherwise 0")
+        long tickDelay;
+
+        static void emit(ShutdownManager.State from, ShutdownManager.State to, long tickDelay) {
+            ShutdownTransition event = new ShutdownTransition();
+            if (!event.shouldCommit()) return;
+            event.from = from.name();
+            event.to = to.name();
+            event.tickDelay = tickDelay;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package io.github.ariuan.connectorPlugin;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves the server in small steps during a shutdown countdown, so the final save only has the changes since then.
+ * Each tick runs steps until the budget is used up, at least one: saving one player's data, requesting the unload
+ * of a batch of chunks no player can see (the server saves them as they unload), and finally saving each world.
+ * <p>
+ * A world save can't be split up, so it is only done for worlds without players, where little is left to write.
+ * The chunks players can see are left to the final save, which runs after they have been kicked,
+ * and which would have to write them again anyway as players keep changing them during the countdown.
+ * Must be started on the main thread, can be aborted from any thread.
+ */
+public class PreShutdownSaver {
+    private static final int CHUNKS_PER_STEP = 16;
+
+    private final Plugin plugin;
+    private final long budgetNanos;
+    private final Queue<Runnable> steps = new ArrayDeque<>();
+    private volatile BukkitTask task;
+    private volatile boolean aborted;
+    private long startNanos;
+    private int playersSaved;
+    private int chunksUnloaded;
+    private int worldsSaved;
+    private int worldsSkipped;
+
+    public PreShutdownSaver(Plugin plugin, long budgetMicros) {
+        this.plugin = plugin;
+        this.budgetNanos = TimeUnit.MICROSECONDS.toNanos(budgetMicros);
+    }
+
+    public void start() {
+        if (task != null) return;
+        startNanos = System.nanoTime();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            steps.add(() -> {
+                if (!player.isOnline()) return;
+                player.saveData();
+                playersSaved++;
+            });
+        }
+        List<World> worlds = Bukkit.getWorlds();
+        for (World world : worlds) {
+            List<Chunk> unseen = unseenChunks(world);
+            for (int i = 0; i < unseen.size(); i += CHUNKS_PER_STEP) {
+                List<Chunk> batch = unseen.subList(i, Math.min(unseen.size(), i + CHUNKS_PER_STEP));
+                steps.add(() -> {
+                    for (Chunk chunk : batch) {
+                        if (chunk.isLoaded() && world.unloadChunkRequest(chunk.getX(), chunk.getZ())) chunksUnloaded++;
+                    }
+                });
+            }
+        }
+        // Last, so they only write what changed since the players and chunks above were saved
+        for (World world : worlds) {
+            steps.add(() -> {
+                if (!world.getPlayers().isEmpty()) {
+                    worldsSkipped++;
+                    return;
+                }
+                world.save();
+                worldsSaved++;
+            });
+        }
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this::runSteps, 1, 1);
+    }
+
+    /**
+     * Stop before the next step, what was already saved stays saved
+     */
+    public void abort() {
+        BukkitTask current = task;
+        if (aborted || current == null || current.isCancelled()) return;
+        aborted = true;
+        current.cancel();
+        plugin.getLogger().info("Aborted pre-shutdown save after " + playersSaved + " players, " + chunksUnloaded + " chunks and " + worldsSaved + " worlds");
+    }
+
+    private void runSteps() {
+        long tickStart = System.nanoTime();
+        do {
+            if (aborted) return;
+            Runnable step = steps.poll();
+            if (step == null) {
+                task.cancel();
+                plugin.getLogger().info("Pre-shutdown save finished in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + "ms: "
+                        + playersSaved + " players, " + chunksUnloaded + " chunks unloaded, " + worldsSaved + " worlds, "
+                        + worldsSkipped + " worlds with players left to the final save");
+                return;
+            }
+            try {
+                step.run();
+            } catch (RuntimeException e) {
+                plugin.getLogger().warning("Error in pre-shutdown save: " + e.getMessage());
+            }
+        } while (System.nanoTime() - tickStart < budgetNanos);
+    }
+
+    /**
+     * @return loaded chunks outside every player's view distance that aren't force-loaded
+     */
+    private static List<Chunk> unseenChunks(World world) {
+        int viewDistance = world.getViewDistance();
+        List<int[]> playerChunks = new ArrayList<>();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            if (!player.getWorld().equals(world)) continue;
+            playerChunks.add(new int[]{player.getLocation().getBlockX() >> 4, player.getLocation().getBlockZ() >> 4});
+        }
+        List<Chunk> unseen = new ArrayList<>();
+        for (Chunk chunk : world.getLoadedChunks()) {
+            if (!chunk.isForceLoaded() && !isSeen(chunk, playerChunks, viewDistance)) {
+                unseen.add(chunk);
+            }
+        }
+        return unseen;
+    }
+
+    private static boolean isSeen(Chunk chunk, List<int[]> playerChunks, int viewDistance) {
+        for (int[] playerChunk : playerChunks) {
+            if (Math.abs(chunk.getX() - playerChunk[0]) <= viewDistance && Math.abs(chunk.getZ() - playerChunk[1]) <= viewDistance) return true;
+        }
+        return false;
+    }
+}
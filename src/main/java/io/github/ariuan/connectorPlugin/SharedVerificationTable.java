@@ -0,0 +1,237 @@
+package io.github.ariuan.connectorPlugin;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.UUID;
+
+/**
+ * Memory-mapped table of UUID to verified-until, shared by the plugin instances on one host.
+ * A player verified on one instance is admitted by the others without another /verify call until the entry expires.
+ * <p>
+ * The table is a fixed-size open-addressing hash table with linear probing. Every slot holds a tag, the UUID and
+ * the verified-until time as longs, all accessed atomically on the mapped buffer. The tag is 0 for an empty slot,
+ * odd while the slot's key is being written and even once it is readable, so readers never lock and writers only
+ * use compare-and-set. Slots are never emptied again, expired ones are reused for new keys instead.
+ */
+public class SharedVerificationTable implements Closeable {
+    private static final long MAGIC = 0x434F4E4E56455249L; // "CONNVERI"
+    private static final int HEADER_BYTES = 64;
+    private static final int SLOT_BYTES = 32;
+    private static final int MAX_SLOTS = 1 << 23;
+    private static final int TAG = 0;
+    private static final int MSB = 8;
+    private static final int LSB = 16;
+    private static final int UNTIL = 24;
+    // How long to wait for another instance to finish writing a slot's key before probing past it
+    private static final int MAX_SPINS = 1000;
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int slots;
+
+    private SharedVerificationTable(RandomAccessFile file, MappedByteBuffer buffer, int slots) {
+        this.file = file;
+        this.buffer = buffer;
+        this.slots = slots;
+    }
+
+    /**
+     * Open the table in a directory, creating it if no instance has yet.
+     * An existing table keeps the slot count it was created with.
+     *
+     * @param slots Number of slots of a new table, rounded up to a power of two and at most 2^24
+     */
+    public static SharedVerificationTable open(File directory, int slots) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        RandomAccessFile file = new RandomAccessFile(new File(directory, "verification.table"), "rw");
+        try {
+            FileChannel channel = file.getChannel();
+            int tableSlots;
+            // Only held while the header is checked, so two instances starting together don't both initialize it
+            try (FileLock ignored = channel.lock()) {
+                if (file.length() == 0) {
+                    tableSlots = Integer.highestOneBit(Math.min(MAX_SLOTS, Math.max(16, slots - 1))) << 1;
+                    file.setLength(HEADER_BYTES + (long) tableSlots * SLOT_BYTES);
+                    file.writeLong(MAGIC);
+                    file.writeInt(tableSlots);
+                    channel.force(true);
+                } else {
+                    file.seek(0);
+                    if (file.length() < HEADER_BYTES || file.readLong() != MAGIC) {
+                        throw new IOException("Not a verification table: " + directory);
+                    }
+                    tableSlots = file.readInt();
+                    if (Integer.bitCount(tableSlots) != 1 || tableSlots > MAX_SLOTS << 1 || file.length() != HEADER_BYTES + (long) tableSlots * SLOT_BYTES) {
+                        throw new IOException("Corrupt verification table: " + directory);
+                    }
+                }
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) tableSlots * SLOT_BYTES);
+            return new SharedVerificationTable(file, buffer, tableSlots);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return epoch milliseconds until which the player is verified, or 0 if no instance verified them
+     */
+    public long getVerifiedUntil(UUID uuid) {
+        int slot = find(uuid);
+        return slot < 0 ? 0 : getLong(slot, UNTIL);
+    }
+
+    /**
+     * Record that a player is verified until the given time, keeping a later time set by another instance
+     *
+     * @return false if the table is full
+     */
+    public boolean extend(UUID uuid, long verifiedUntil) {
+        while (true) {
+            int slot = find(uuid);
+            if (slot < 0) {
+                slot = insert(uuid, verifiedUntil);
+                if (slot >= 0) return true;
+                if (slot == -1) return false;
+                // Lost a race for the slot, look again
+                continue;
+            }
+            long tag = getLong(slot, TAG);
+            long current = getLong(slot, UNTIL);
+            if (current >= verifiedUntil) return true;
+            // The tag check catches the slot being reused for another key since find()
+            if (casLong(slot, UNTIL, current, verifiedUntil) && getLong(slot, TAG) == tag) return true;
+        }
+    }
+
+    /**
+     * Remove a player's verification, for example after they ran out of credits
+     */
+    public void revoke(UUID uuid) {
+        int start = startSlot(uuid);
+        for (int i = 0; i < slots; i++) {
+            int slot = (start + i) & (slots - 1);
+            long tag = awaitTag(slot);
+            if (tag == 0) return;
+            // Keeps looking after a match, concurrent inserts may have left the key in more than one slot
+            if (matches(slot, tag, uuid)) {
+                setLong(slot, UNTIL, 0);
+            }
+        }
+    }
+
+    /**
+     * @return number of slots that hold an unexpired verification
+     */
+    public int countVerified() {
+        long now = System.currentTimeMillis();
+        int count = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            long tag = getLong(slot, TAG);
+            if (tag != 0 && (tag & 1) == 0 && getLong(slot, UNTIL) > now) count++;
+        }
+        return count;
+    }
+
+    public int getSlots() {
+        return slots;
+    }
+
+    private int find(UUID uuid) {
+        int start = startSlot(uuid);
+        for (int i = 0; i < slots; i++) {
+            int slot = (start + i) & (slots - 1);
+            long tag = awaitTag(slot);
+            if (tag == 0) return -1;
+            if (matches(slot, tag, uuid)) return slot;
+        }
+        return -1;
+    }
+
+    /**
+     * Claim an empty or expired slot for a key
+     *
+     * @return the slot, -1 if the table is full or -2 if another instance changed the probed slots meanwhile
+     */
+    private int insert(UUID uuid, long verifiedUntil) {
+        long now = System.currentTimeMillis();
+        int start = startSlot(uuid);
+        for (int i = 0; i < slots; i++) {
+            int slot = (start + i) & (slots - 1);
+            long tag = getLong(slot, TAG);
+            boolean reusable = tag == 0 || ((tag & 1) == 0 && getLong(slot, UNTIL) < now);
+            if (!reusable) continue;
+            if (!casLong(slot, TAG, tag, tag + 1)) return -2;
+            setLong(slot, MSB, uuid.getMostSignificantBits());
+            setLong(slot, LSB, uuid.getLeastSignificantBits());
+            setLong(slot, UNTIL, verifiedUntil);
+            setLong(slot, TAG, tag + 2);
+            return slot;
+        }
+        return -1;
+    }
+
+    /**
+     * Read a slot's tag, waiting briefly while another instance writes its key
+     *
+     * @return the tag, which is still odd if the writer did not finish in time
+     */
+    private long awaitTag(int slot) {
+        long tag = getLong(slot, TAG);
+        for (int spins = 0; (tag & 1) == 1 && spins < MAX_SPINS; spins++) {
+            Thread.onSpinWait();
+            tag = getLong(slot, TAG);
+        }
+        return tag;
+    }
+
+    private boolean matches(int slot, long tag, UUID uuid) {
+        if ((tag & 1) == 1) return false;
+        long msb = getLong(slot, MSB);
+        long lsb = getLong(slot, LSB);
+        // A changed tag means the slot was reused while the key was read
+        return getLong(slot, TAG) == tag && msb == uuid.getMostSignificantBits() && lsb == uuid.getLeastSignificantBits();
+    }
+
+    private int startSlot(UUID uuid) {
+        long hash = uuid.getMostSignificantBits() ^ uuid.getLeastSignificantBits();
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return (int) hash & (slots - 1);
+    }
+
+    private long getLong(int slot, int field) {
+        return (long) LONGS.getVolatile((ByteBuffer) buffer, offset(slot, field));
+    }
+
+    private void setLong(int slot, int field, long value) {
+        LONGS.setVolatile((ByteBuffer) buffer, offset(slot, field), value);
+    }
+
+    private boolean casLong(int slot, int field, long expected, long value) {
+        return LONGS.compareAndSet((ByteBuffer) buffer, offset(slot, field), expected, value);
+    }
+
+    private static int offset(int slot, int field) {
+        return HEADER_BYTES + slot * SLOT_BYTES + field;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
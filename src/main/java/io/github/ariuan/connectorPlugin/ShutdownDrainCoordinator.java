@@ -0,0 +1,87 @@
+package io.github.ariuan.connectorPlugin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Runs the plugin's pending work to completion before the server stops.
+ * Every registered drain is started at once and all of them share one deadline,
+ * drains that miss it are told to give up and the shutdown continues without them.
+ */
+public class ShutdownDrainCoordinator {
+    private final Logger logger;
+    private final long deadlineMillis;
+    private final List<Drain> drains = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param deadlineMillis How long all drains together may take
+     */
+    public ShutdownDrainCoordinator(Logger logger, long deadlineMillis) {
+        this.logger = logger;
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    /**
+     * @param name      Name used in log messages
+     * @param start     Starts the drain, the returned future completes when the work is done
+     * @param onTimeout Called when the drain did not finish before the deadline
+     */
+    public void register(String name, Supplier<CompletableFuture<?>> start, Runnable onTimeout) {
+        drains.add(new Drain(name, start, onTimeout));
+    }
+
+    public void register(String name, Supplier<CompletableFuture<?>> start) {
+        register(name, start, () -> {
+        });
+    }
+
+    /**
+     * Start every drain and wait for them up to the deadline.
+     * Must be called on the main thread, drains that need the main thread must not block it.
+     *
+     * @return a future that completes once all drains finished or the deadline passed, never exceptionally
+     */
+    public CompletableFuture<Void> drain() {
+        long startedAt = System.currentTimeMillis();
+        List<Drain> started = new ArrayList<>(drains);
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (Drain drain : started) {
+            CompletableFuture<?> future;
+            try {
+                future = drain.start().get();
+            } catch (RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            futures.add(future.handle((result, error) -> {
+                if (error != null) {
+                    logger.warning("Shutdown drain " + drain.name() + " failed: " + error.getMessage());
+                }
+                return null;
+            }));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .completeOnTimeout(null, deadlineMillis, TimeUnit.MILLISECONDS)
+                .thenRun(() -> {
+                    for (int i = 0; i < started.size(); i++) {
+                        if (futures.get(i).isDone()) continue;
+                        Drain drain = started.get(i);
+                        logger.warning("Shutdown drain " + drain.name() + " did not finish within " + deadlineMillis + " ms");
+                        try {
+                            drain.onTimeout().run();
+                        } catch (RuntimeException e) {
+                            logger.warning("Error aborting shutdown drain " + drain.name() + ": " + e.getMessage());
+                        }
+                    }
+                    logger.info("Shutdown drain finished in " + (System.currentTimeMillis() - startedAt) + " ms");
+                });
+    }
+
+    private record Drain(String name, Supplier<CompletableFuture<?>> start, Runnable onTimeout) {
+    }
+}
@@ -1,7 +1,6 @@
 package io.github.ariuan.connectorPlugin;
 
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
 import org.bukkit.Bukkit;
@@ -9,41 +8,68 @@ import org.bukkit.entity.Player;
 import org.bukkit.scheduler.BukkitTask;
 
 import java.io.IOException;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URI;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
 public class ShutdownManager {
+    /**
+     * IDLE -> SCHEDULED -> DRAINING -> STOPPING, a scheduled shutdown can go back to IDLE when cancelled
+     */
+    public enum State {
+        IDLE,
+        SCHEDULED,
+        DRAINING,
+        STOPPING
+    }
+
     private final ConnectorPlugin plugin;
-    private final String apiUrl;
+    private final BackendClient backendClient;
+    private final ShutdownDrainCoordinator drainCoordinator;
+    private final long preShutdownSaveBudgetMicros;
+    // Guarded by this, touched by both the main thread and the HTTP threads
     private final List<BukkitTask> shutdownTasks = new ArrayList<>();
+    private State state = State.IDLE;
+    // Server tick at which the scheduled shutdown starts draining
+    private long shutdownTick;
     private boolean isGracePeriodShutdown = false;
+    // Saves during the countdown of the scheduled shutdown, null before it starts
+    private PreShutdownSaver preShutdownSaver;
     public static final long GRACE_PERIOD_TICKS = 20 * 60; // 60 seconds grace period
 
-    public ShutdownManager(ConnectorPlugin plugin, String apiUrl) {
+    /**
+     * @param preShutdownSaveBudgetMicros Main thread time per tick for saving during the countdown, 0 to save everything at the end
+     */
+    public ShutdownManager(ConnectorPlugin plugin, BackendClient backendClient, ShutdownDrainCoordinator drainCoordinator, long preShutdownSaveBudgetMicros) {
         this.plugin = plugin;
-        this.apiUrl = apiUrl;
+        this.backendClient = backendClient;
+        this.drainCoordinator = drainCoordinator;
+        this.preShutdownSaveBudgetMicros = preShutdownSaveBudgetMicros;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return ticks until the scheduled shutdown starts draining, or -1 if none is scheduled
+     */
+    public synchronized long getRemainingTicks() {
+        if (state != State.SCHEDULED) return -1;
+        return Math.max(0, shutdownTick - Bukkit.getCurrentTick());
     }
 
     /**
      * Cancel the scheduled shutdown
      *
-     * @return true if shutdown was cancelled, false if no shutdown was scheduled
+     * @return true if shutdown was cancelled, false if no shutdown was scheduled or it is already draining
      */
-    public boolean cancelShutdown() {
-        if (shutdownTasks.isEmpty()) return false;
+    public synchronized boolean cancelShutdown() {
+        if (state != State.SCHEDULED) return false;
         plugin.getLogger().info("Cancelling shutdown");
         Bukkit.broadcast(Component.text("Cancelled shutdown", NamedTextColor.GREEN));
-        for (BukkitTask task : shutdownTasks) {
-            if (task == null) continue;
-            if (task.isCancelled()) continue;
-            task.cancel();
-        }
-        shutdownTasks.clear();
+        cancelTasks();
+        abortPreShutdownSave();
+        setState(State.IDLE, 0);
         isGracePeriodShutdown = false;
         return true;
     }
@@ -55,18 +81,22 @@ public class ShutdownManager {
      * @param allowGracePeriod Whether to allow grace period (for all-players-left shutdown)
      * @return true if shutdown was scheduled, false if already scheduled
      */
-    public boolean shutdown(long tickDelay, boolean allowGracePeriod) {
+    public synchronized boolean shutdown(long tickDelay, boolean allowGracePeriod) {
         plugin.getLogger().info("Shutting down in " + tickDelay + " ticks (grace period: " + allowGracePeriod + ")");
 
         if (tickDelay <= 0) {
+            if (state == State.DRAINING || state == State.STOPPING) return false;
+            cancelTasks();
             Bukkit.broadcast(Component.text("Shutting down server!", NamedTextColor.DARK_RED));
-            Bukkit.getServer().shutdown();
+            beginDrain();
             return true;
         }
 
-        if (!shutdownTasks.isEmpty()) return false;
+        if (state != State.IDLE) return false;
 
+        setState(State.SCHEDULED, tickDelay);
         isGracePeriodShutdown = allowGracePeriod;
+        shutdownTick = Bukkit.getCurrentTick() + tickDelay;
 
         if (allowGracePeriod) {
             Bukkit.broadcast(Component.text("All players left. Server will shutdown in " + (tickDelay / 20) + " seconds if no one rejoins.", NamedTextColor.YELLOW));
@@ -79,38 +109,107 @@ public class ShutdownManager {
             shutdownTasks.add(Bukkit.getScheduler().runTaskLater(plugin, () -> {
                 Countdown countdown = new Countdown();
                 countdown.start(10);
+                startPreShutdownSave();
             }, tickDelay - 20 * 10));
+        } else {
+            // No countdown, start saving right away
+            shutdownTasks.add(Bukkit.getScheduler().runTask(plugin, this::startPreShutdownSave));
         }
 
         shutdownTasks.add(Bukkit.getScheduler().runTaskLater(plugin, () -> {
-            Bukkit.broadcast(Component.text("Shutting down server!", NamedTextColor.DARK_RED));
-            plugin.getLogger().info("Scheduled shutting down server");
-            Bukkit.getServer().shutdown();
-            shutdownTasks.clear();
-            isGracePeriodShutdown = false;
+            synchronized (this) {
+                // Cancelled while this task was already queued
+                if (state != State.SCHEDULED) return;
+                Bukkit.broadcast(Component.text("Shutting down server!", NamedTextColor.DARK_RED));
+                plugin.getLogger().info("Scheduled shutting down server");
+                shutdownTasks.clear();
+                beginDrain();
+            }
         }, tickDelay));
 
         return true;
     }
 
+    /**
+     * Move to DRAINING and stop the server once the drain coordinator is done. Must hold the lock.
+     */
+    private void beginDrain() {
+        setState(State.DRAINING, 0);
+        isGracePeriodShutdown = false;
+        // Drains read player state, so they are started on the main thread
+        if (Bukkit.isPrimaryThread()) {
+            startDrain();
+        } else {
+            Bukkit.getScheduler().runTask(plugin, this::startDrain);
+        }
+    }
+
+    private void startDrain() {
+        drainCoordinator.drain().thenRun(() -> {
+            // The server may already be stopping for another reason, then there is nothing left to do
+            if (!plugin.isEnabled()) return;
+            Bukkit.getScheduler().runTask(plugin, this::stopServer);
+        });
+    }
+
+    private synchronized void stopServer() {
+        // The server's own save covers whatever is left
+        abortPreShutdownSave();
+        setState(State.STOPPING, 0);
+        Bukkit.getServer().shutdown();
+    }
+
+    /**
+     * Must hold the lock
+     */
+    private void setState(State next, long tickDelay) {
+        PluginEvents.ShutdownTransition.emit(state, next, tickDelay);
+        state = next;
+    }
+
+    private synchronized void startPreShutdownSave() {
+        // Cancelled while this task was already queued
+        if (state != State.SCHEDULED || preShutdownSaveBudgetMicros <= 0) return;
+        preShutdownSaver = new PreShutdownSaver(plugin, preShutdownSaveBudgetMicros);
+        preShutdownSaver.start();
+    }
+
+    /**
+     * Must hold the lock
+     */
+    private void abortPreShutdownSave() {
+        if (preShutdownSaver == null) return;
+        preShutdownSaver.abort();
+        preShutdownSaver = null;
+    }
+
+    private void cancelTasks() {
+        for (BukkitTask task : shutdownTasks) {
+            if (task == null) continue;
+            if (task.isCancelled()) continue;
+            task.cancel();
+        }
+        shutdownTasks.clear();
+    }
+
     /**
      * Handle player rejoin during grace period
      * If shutdown is in grace period, cancel it
      */
-    public void handlePlayerRejoin() {
-        if (isGracePeriodShutdown && !shutdownTasks.isEmpty()) {
+    public synchronized void handlePlayerRejoin() {
+        if (isGracePeriodShutdown && state == State.SCHEDULED) {
             plugin.getLogger().info("Player rejoined during grace period, cancelling shutdown");
             cancelShutdown();
         }
     }
 
     /**
-     * Check if a shutdown is currently scheduled
+     * Check if a shutdown is currently scheduled or in progress
      *
      * @return true if shutdown is scheduled
      */
-    public boolean hasScheduledShutdown() {
-        return !shutdownTasks.isEmpty();
+    public synchronized boolean hasScheduledShutdown() {
+        return state != State.IDLE;
     }
 
     /**
@@ -120,7 +219,7 @@ public class ShutdownManager {
      * @return true if cancellation was successful, false otherwise
      */
     public boolean cancelShutdownViaApi(Player player) {
-        if (shutdownTasks.isEmpty()) {
+        if (getState() != State.SCHEDULED) {
             plugin.getLogger().info("No shutdown scheduled to cancel");
             return false;
         }
@@ -148,36 +247,16 @@ public class ShutdownManager {
      * @throws IOException if there's a network error
      */
     private boolean callCancelStopEndpoint(Player player) throws IOException {
-        String endpoint = apiUrl + "/cancelShutdown";
-        URL url = URI.create(endpoint).toURL();
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-
-        try {
-            conn.setRequestMethod("POST");
-            conn.setRequestProperty("Content-Type", "application/json");
-            conn.setDoOutput(true);
-            conn.setConnectTimeout(5000);
-            conn.setReadTimeout(5000);
-
-            JsonObject json = new JsonObject();
-            json.addProperty("serverPort", Bukkit.getServer().getPort());
-            json.addProperty("uuid", player.getUniqueId().toString());
-            json.addProperty("playerName", player.getName());
-
-            try (OutputStream os = conn.getOutputStream()) {
-                byte[] input = json.toString().getBytes(StandardCharsets.UTF_8);
-                os.write(input, 0, input.length);
-            }
+        JsonObject json = new JsonObject();
+        json.addProperty("serverPort", Bukkit.getServer().getPort());
+        json.addProperty("uuid", player.getUniqueId().toString());
+        json.addProperty("playerName", player.getName());
 
-            int responseCode = conn.getResponseCode();
-            if (responseCode == 200) {
-                String response = new String(conn.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
-                JsonObject responseJson = JsonParser.parseString(response).getAsJsonObject();
-                return responseJson.has("allowed") && responseJson.get("allowed").getAsBoolean();
-            }
-            return false;
-        } finally {
-            conn.disconnect();
+        BackendClient.BackendResponse response = backendClient.post("/cancelShutdown", json);
+        if (response.isOk()) {
+            JsonObject responseJson = response.json();
+            return responseJson.has("allowed") && responseJson.get("allowed").getAsBoolean();
         }
+        return false;
     }
 }
@@ -0,0 +1,159 @@
+package io.github.ariuan.connectorPlugin;
+
+import com.google.gson.stream.JsonWriter;
+import io.github.ariuan.connectorPlugin.JsonResponses.JsonBody;
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds a health snapshot of the server once per second on the main thread.
+ * The snapshot is immutable and published through a volatile field, so /status reads it from any thread
+ * without locking or touching Bukkit.
+ */
+public class StatusMonitor {
+    private static final long PERIOD_TICKS = 20;
+
+    private final Plugin plugin;
+    private final PlayerVerificationManager verificationManager;
+    private final ShutdownManager shutdownManager;
+    private final BackendClient backendClient;
+    private volatile Published published;
+    private long sequence;
+    private BukkitTask task;
+
+    public StatusMonitor(Plugin plugin, PlayerVerificationManager verificationManager, ShutdownManager shutdownManager, BackendClient backendClient) {
+        this.plugin = plugin;
+        this.verificationManager = verificationManager;
+        this.shutdownManager = shutdownManager;
+        this.backendClient = backendClient;
+    }
+
+    public void start() {
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this::update, 0, PERIOD_TICKS);
+    }
+
+    public void stop() {
+        if (task != null && !task.isCancelled()) {
+            task.cancel();
+        }
+    }
+
+    /**
+     * @return the latest snapshot with its serialized form, or null before the first one was built
+     */
+    public Published getPublished() {
+        return published;
+    }
+
+    private void update() {
+        double[] tps = Bukkit.getTPS();
+        long[] tickTimes = Bukkit.getTickTimes().clone();
+        Arrays.sort(tickTimes);
+        Runtime runtime = Runtime.getRuntime();
+        long heapCommitted = runtime.totalMemory();
+
+        Snapshot next = new Snapshot(++sequence, System.currentTimeMillis(),
+                tps[0], tps[1], tps[2],
+                toMillis(average(tickTimes)), toMillis(percentile(tickTimes, 0.50)), toMillis(percentile(tickTimes, 0.95)), toMillis(percentile(tickTimes, 1.0)),
+                heapCommitted - runtime.freeMemory(), heapCommitted, runtime.maxMemory(),
+                Bukkit.getOnlinePlayers().size(), verificationManager.countVerified(),
+                shutdownManager.getState(), shutdownManager.getRemainingTicks(),
+                backendClient.getNodeHealth(), backendClient.getLatencyPercentile(0.50), backendClient.getLatencyPercentile(0.95));
+        try {
+            JsonBody body = JsonResponses.write(next::write);
+            published = new Published(next, body.toByteArray());
+            body.release();
+        } catch (IOException e) {
+            plugin.getLogger().warning("Error serializing status: " + e.getMessage());
+        }
+    }
+
+    private static long average(long[] values) {
+        if (values.length == 0) return 0;
+        long sum = 0;
+        for (long value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.ceil(sorted.length * percentile) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * A snapshot and its JSON, published together so /status never pairs one snapshot with another's bytes
+     *
+     * @param json Serialized snapshot, must not be modified
+     */
+    public record Published(Snapshot snapshot, byte[] json) {
+    }
+
+    /**
+     * Server health at one point in time
+     *
+     * @param sequence               Increases with every snapshot
+     * @param shutdownRemainingTicks Ticks until a scheduled shutdown, or -1
+     * @param backendLatencyP50      Recent backend latency in milliseconds, or -1 without samples
+     */
+    public record Snapshot(long sequence, long createdAt,
+                           double tps1m, double tps5m, double tps15m,
+                           double msptAverage, double msptP50, double msptP95, double msptMax,
+                           long heapUsed, long heapCommitted, long heapMax,
+                           int players, int verifiedPlayers,
+                           ShutdownManager.State shutdownState, long shutdownRemainingTicks,
+                           Map<String, Boolean> backendNodes, long backendLatencyP50, long backendLatencyP95) {
+        public Snapshot {
+            backendNodes = Collections.unmodifiableMap(new LinkedHashMap<>(backendNodes));
+        }
+
+        private void write(JsonWriter writer) throws IOException {
+            writer.beginObject();
+            writer.name("sequence").value(sequence);
+            writer.name("createdAt").value(createdAt);
+            writer.name("tps").beginArray().value(tps1m).value(tps5m).value(tps15m).endArray();
+            writer.name("mspt").beginObject()
+                    .name("average").value(msptAverage)
+                    .name("p50").value(msptP50)
+                    .name("p95").value(msptP95)
+                    .name("max").value(msptMax)
+                    .endObject();
+            writer.name("heap").beginObject()
+                    .name("used").value(heapUsed)
+                    .name("committed").value(heapCommitted)
+                    .name("max").value(heapMax)
+                    .endObject();
+            writer.name("players").value(players);
+            writer.name("verifiedPlayers").value(verifiedPlayers);
+            writer.name("shutdown").beginObject()
+                    .name("state").value(shutdownState.name().toLowerCase(Locale.ROOT))
+                    .name("remainingTicks").value(shutdownRemainingTicks)
+                    .endObject();
+            writer.name("backend").beginObject();
+            writer.name("latencyP50Millis").value(backendLatencyP50);
+            writer.name("latencyP95Millis").value(backendLatencyP95);
+            writer.name("nodes").beginArray();
+            for (Map.Entry<String, Boolean> node : backendNodes.entrySet()) {
+                writer.beginObject().name("url").value(node.getKey()).name("healthy").value(node.getValue()).endObject();
+            }
+            writer.endArray();
+            writer.endObject();
+            writer.endObject();
+        }
+    }
+}
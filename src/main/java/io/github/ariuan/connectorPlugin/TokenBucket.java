@@ -0,0 +1,38 @@
+package io.github.ariuan.connectorPlugin;
+
+/**
+ * Token bucket rate limiter, refilled continuously at a fixed rate up to its capacity
+ */
+class TokenBucket {
+    private final double ratePerNano;
+    private final double capacity;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    TokenBucket(double ratePerSecond, double capacity) {
+        this.ratePerNano = ratePerSecond / 1_000_000_000.0;
+        this.capacity = capacity;
+        this.tokens = capacity;
+    }
+
+    synchronized boolean tryAcquire() {
+        refill();
+        if (tokens < 1) return false;
+        tokens--;
+        return true;
+    }
+
+    /**
+     * @return nanoseconds until the next token is available, 0 if one is available now
+     */
+    synchronized long nanosUntilAvailable() {
+        refill();
+        return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / ratePerNano);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * ratePerNano);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,67 @@
+package io.github.ariuan.connectorPlugin.perf;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide allocation rate: heap freed by every GC plus the growth of the heap since start.
+ * Per-thread counters would miss the short-lived request threads of NanoHTTPD.
+ */
+final class AllocationMeter implements NotificationListener {
+    private final AtomicLong freed = new AtomicLong();
+    private long startUsed;
+    private long startNanos;
+
+    void start() {
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter emitter) {
+                emitter.addNotificationListener(this, null, null);
+            }
+        }
+        startUsed = heapUsed();
+        startNanos = System.nanoTime();
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) return;
+        GcInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData()).getGcInfo();
+        long before = sum(info.getMemoryUsageBeforeGc());
+        long after = sum(info.getMemoryUsageAfterGc());
+        freed.addAndGet(Math.max(0, before - after));
+    }
+
+    long allocatedBytes() {
+        return heapUsed() - startUsed + freed.get();
+    }
+
+    String report(long operations) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        long bytes = allocatedBytes();
+        return String.format(Locale.ROOT, "allocation       %10.1f MB/s   %10.1f KB per operation",
+                bytes / seconds / (1024 * 1024), operations == 0 ? 0 : bytes / 1024.0 / operations);
+    }
+
+    private static long heapUsed() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long sum(Map<String, MemoryUsage> pools) {
+        long used = 0;
+        for (MemoryUsage usage : pools.values()) {
+            used += usage.getUsed();
+        }
+        return used;
+    }
+}
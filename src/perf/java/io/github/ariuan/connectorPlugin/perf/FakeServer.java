@@ -0,0 +1,262 @@
+package io.github.ariuan.connectorPlugin.perf;
+
+import net.kyori.adventure.text.Component;
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.ConsoleCommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Just enough of a Bukkit server to run the plugin's classes outside of Paper.
+ * Server, scheduler, plugin and players are dynamic proxies, methods the harness doesn't need return defaults.
+ * Sync tasks run on one "main" thread where a tick lasts tickMillis, async tasks run on a cached pool.
+ */
+final class FakeServer {
+    private final long tickMillis;
+    private final Logger logger = Logger.getLogger("FakeServer");
+    private final ScheduledExecutorService mainThread;
+    private final ExecutorService asyncPool = Executors.newCachedThreadPool(daemonThreads("fake-async"));
+    // Delays of async tasks run here, so they don't wait for a busy main thread
+    private final ScheduledExecutorService asyncTimer = Executors.newSingleThreadScheduledExecutor(daemonThreads("fake-async-timer"));
+    private final Map<UUID, Player> players = new ConcurrentHashMap<>();
+    private final Map<UUID, AtomicBoolean> onlineFlags = new ConcurrentHashMap<>();
+    private final AtomicInteger taskIds = new AtomicInteger();
+    private final AtomicLong kicks = new AtomicLong();
+    private final AtomicLong dispatchedCommands = new AtomicLong();
+    private final Plugin plugin;
+    private final Server server;
+    private volatile Thread primaryThread;
+    private volatile Consumer<Player> kickListener;
+
+    FakeServer(long tickMillis) {
+        this.tickMillis = tickMillis;
+        this.mainThread = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fake-main");
+            thread.setDaemon(true);
+            primaryThread = thread;
+            return thread;
+        });
+        this.plugin = proxy(Plugin.class, (self, method, args) -> switch (method.getName()) {
+            case "getName" -> "perf";
+            case "getLogger" -> logger;
+            case "isEnabled" -> true;
+            default -> defaultValue(self, method, args);
+        });
+        BukkitScheduler scheduler = proxy(BukkitScheduler.class, this::schedule);
+        ConsoleCommandSender console = proxy(ConsoleCommandSender.class, (self, method, args) ->
+                method.getName().equals("getName") ? "CONSOLE" : defaultValue(self, method, args));
+        this.server = proxy(Server.class, (self, method, args) -> switch (method.getName()) {
+            case "getScheduler" -> scheduler;
+            case "getOnlinePlayers" -> new ArrayList<>(players.values());
+            case "getPlayer" -> args[0] instanceof UUID uuid ? players.get(uuid) : findByName((String) args[0]);
+            case "getPlayerExact" -> findByName((String) args[0]);
+            case "getConsoleSender" -> console;
+            case "dispatchCommand" -> dispatchCommand((CommandSender) args[0], (String) args[1]);
+            case "isPrimaryThread" -> Thread.currentThread() == primaryThread;
+            case "getLogger" -> logger;
+            case "getPort" -> 25565;
+            case "getName", "getVersion", "getBukkitVersion" -> "fake";
+            default -> defaultValue(self, method, args);
+        });
+        install();
+        // Start the main thread right away so isPrimaryThread works before the first task
+        runOnMain(() -> {
+        }).join();
+    }
+
+    Plugin plugin() {
+        return plugin;
+    }
+
+    long kicks() {
+        return kicks.get();
+    }
+
+    long dispatchedCommands() {
+        return dispatchedCommands.get();
+    }
+
+    /**
+     * Called on the kicking thread, like PlayerQuitEvent after a kick in Paper
+     */
+    void onKick(Consumer<Player> listener) {
+        this.kickListener = listener;
+    }
+
+    /**
+     * Add an online player, the caller is responsible for firing the plugin's join handling.
+     * UUIDs are derived from the name like on an offline-mode server, so a rejoin keeps the UUID.
+     */
+    Player join(String name) {
+        UUID uuid = UUID.nameUUIDFromBytes(("OfflinePlayer:" + name).getBytes(StandardCharsets.UTF_8));
+        AtomicBoolean online = new AtomicBoolean(true);
+        Player player = proxy(Player.class, (self, method, args) -> switch (method.getName()) {
+            case "getUniqueId" -> uuid;
+            case "getName" -> name;
+            case "isOnline" -> online.get();
+            case "kick" -> {
+                online.set(false);
+                players.remove(uuid);
+                onlineFlags.remove(uuid);
+                kicks.incrementAndGet();
+                Consumer<Player> listener = kickListener;
+                if (listener != null) listener.accept((Player) self);
+                yield null;
+            }
+            default -> defaultValue(self, method, args);
+        });
+        players.put(uuid, player);
+        onlineFlags.put(uuid, online);
+        return player;
+    }
+
+    /**
+     * Remove an online player, the caller is responsible for firing the plugin's quit handling
+     */
+    void quit(Player player) {
+        players.remove(player.getUniqueId());
+        AtomicBoolean online = onlineFlags.remove(player.getUniqueId());
+        if (online != null) online.set(false);
+    }
+
+    List<Player> onlinePlayers() {
+        return new ArrayList<>(players.values());
+    }
+
+    CompletableFuture<Void> runOnMain(Runnable task) {
+        return CompletableFuture.runAsync(task, mainThread);
+    }
+
+    void shutdown() {
+        mainThread.shutdownNow();
+        asyncTimer.shutdownNow();
+        asyncPool.shutdownNow();
+    }
+
+    /**
+     * Bukkit.setServer also prints build information that only exists inside Paper, so set the field directly
+     */
+    private void install() {
+        try {
+            Field field = Bukkit.class.getDeclaredField("server");
+            field.setAccessible(true);
+            field.set(null, server);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot install fake server", e);
+        }
+    }
+
+    private Player findByName(String name) {
+        for (Player player : players.values()) {
+            if (player.getName().equals(name)) return player;
+        }
+        return null;
+    }
+
+    private boolean dispatchCommand(CommandSender sender, String command) {
+        dispatchedCommands.incrementAndGet();
+        // Paper commands answer with components rather than strings
+        sender.sendMessage(Component.text("Executed " + command));
+        return true;
+    }
+
+    private Object schedule(Object self, Method method, Object[] args) {
+        String name = method.getName();
+        if (args == null || args.length < 2 || !(args[1] instanceof Runnable task)) {
+            return defaultValue(self, method, args);
+        }
+        boolean async = name.contains("Asynchronously");
+        long delay = args.length > 2 ? (long) args[2] : 0;
+        long period = args.length > 3 ? (long) args[3] : 0;
+        Runnable body = async ? () -> asyncPool.execute(task) : task;
+        ScheduledExecutorService timer = async ? asyncTimer : mainThread;
+
+        ScheduledFuture<?> future;
+        if (name.startsWith("runTaskTimer")) {
+            future = timer.scheduleAtFixedRate(body, Math.max(0, delay) * tickMillis, Math.max(1, period) * tickMillis, TimeUnit.MILLISECONDS);
+        } else if (name.startsWith("runTask")) {
+            future = timer.schedule(body, Math.max(0, delay) * tickMillis, TimeUnit.MILLISECONDS);
+        } else {
+            return defaultValue(self, method, args);
+        }
+        return task(future, !async);
+    }
+
+    private BukkitTask task(Future<?> future, boolean sync) {
+        int id = taskIds.incrementAndGet();
+        return proxy(BukkitTask.class, (self, method, args) -> switch (method.getName()) {
+            case "cancel" -> {
+                future.cancel(false);
+                yield null;
+            }
+            case "isCancelled" -> future.isCancelled();
+            case "getTaskId" -> id;
+            case "isSync" -> sync;
+            case "getOwner" -> plugin;
+            default -> defaultValue(self, method, args);
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(FakeServer.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object defaultValue(Object self, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return self == args[0];
+            case "hashCode":
+                return System.identityHashCode(self);
+            case "toString":
+                return method.getDeclaringClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(self));
+        }
+        Class<?> type = method.getReturnType();
+        if (!type.isPrimitive() || type == void.class) return null;
+        if (type == boolean.class) return false;
+        if (type == char.class) return '\0';
+        if (type == byte.class) return (byte) 0;
+        if (type == short.class) return (short) 0;
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        if (type == float.class) return 0f;
+        return 0d;
+    }
+
+    static ThreadFactory daemonThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,168 @@
+package io.github.ariuan.connectorPlugin.perf;
+
+import io.github.ariuan.connectorPlugin.AdmissionControl;
+import io.github.ariuan.connectorPlugin.CommandRunner;
+import io.github.ariuan.connectorPlugin.HttpServer;
+import io.github.ariuan.connectorPlugin.JsonLinesLogStore;
+import io.github.ariuan.connectorPlugin.LogCaptureHandler;
+import io.github.ariuan.connectorPlugin.MainThreadExecutor;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+import java.util.stream.Stream;
+
+/**
+ * Runs the plugin's {@link HttpServer} on a fake server and drives its routes with concurrent clients.
+ * A background logger keeps adding entries so /logs can't be served from cache alone.
+ * <p>
+ * Options: --routes logs,players,runCommand --concurrency 16 --seconds 30 --players 100 --log-entries 1000
+ * --log-rate 100 (entries per second) --port 16001 --tick-ms 50 --budget-micros 2000 --queue-capacity 1000 --gzip
+ * --completion return (return, quiet or ticks for /runCommand) --quiet-ms 100
+ * --max-concurrency 0 (admission control with this shared pool, 0 to disable) --reserved-concurrency 4
+ * --logs-rate 5 --logs-concurrency 2 (limits of /logs with admission control)
+ */
+public final class HttpLoadGenerator {
+    public static void main(String[] args) throws Exception {
+        Options options = new Options(args);
+        String[] routes = options.get("routes", "logs,players,runCommand").split(",");
+        int concurrency = (int) options.getLong("concurrency", 16);
+        long seconds = options.getLong("seconds", 30);
+        int port = (int) options.getLong("port", 16001);
+        long logRate = options.getLong("log-rate", 100);
+        boolean gzip = options.getBoolean("gzip");
+
+        FakeServer server = new FakeServer(options.getLong("tick-ms", 50));
+        for (int i = 0; i < options.getLong("players", 100); i++) {
+            server.join("player" + i);
+        }
+
+        Path directory = Files.createTempDirectory("connector-perf");
+        File logFile = directory.resolve("log.txt").toFile();
+        Files.createFile(logFile.toPath());
+        LogCaptureHandler logCaptureHandler = new LogCaptureHandler(new JsonLinesLogStore(logFile), null, 0, 1, 0);
+        logCaptureHandler.setFormatter(new SimpleFormatter());
+        Logger logger = Logger.getLogger("HttpLoadGenerator.plugin");
+        logger.setUseParentHandlers(false);
+        logger.addHandler(logCaptureHandler);
+        for (int i = 0; i < options.getLong("log-entries", 1000); i++) {
+            logger.info("Prefilled log entry " + i);
+        }
+
+        MainThreadExecutor mainThread = new MainThreadExecutor(server.plugin(), options.getLong("budget-micros", 2000), (int) options.getLong("queue-capacity", 1000));
+        mainThread.start();
+        CommandRunner commandRunner = new CommandRunner(server.plugin(), logger, CommandRunner.Completion.parse(options.get("completion", "return")),
+                options.getLong("quiet-ms", 100), 2, 5000);
+        int maxConcurrency = (int) options.getLong("max-concurrency", 0);
+        AdmissionControl admissionControl = maxConcurrency <= 0 ? null : new AdmissionControl(maxConcurrency, (int) options.getLong("reserved-concurrency", 4),
+                Set.of("/ping", "/shuttingDown"), Map.of("/logs", new AdmissionControl.RouteLimit((int) options.getLong("logs-concurrency", 2),
+                options.getDouble("logs-rate", 5), options.getDouble("logs-rate", 5) * 2)));
+        HttpServer httpServer = new HttpServer(port, logger, logCaptureHandler, mainThread, commandRunner, null, admissionControl, "", 1024);
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        Map<String, LatencyRecorder> recorders = new LinkedHashMap<>();
+        for (String route : routes) {
+            recorders.put(route, new LatencyRecorder("/" + route));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        Thread logProducer = new Thread(() -> {
+            long sleepMillis = logRate > 0 ? Math.max(1, 1000 / logRate) : 0;
+            long counter = 0;
+            while (sleepMillis > 0 && System.nanoTime() < deadline) {
+                logger.info("Background log entry " + counter++);
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "log-producer");
+        logProducer.setDaemon(true);
+
+        AllocationMeter allocation = new AllocationMeter();
+        allocation.start();
+        long startedAt = System.nanoTime();
+        logProducer.start();
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            int offset = i;
+            Thread worker = new Thread(() -> {
+                int next = offset;
+                while (System.nanoTime() < deadline) {
+                    String route = routes[next++ % routes.length];
+                    LatencyRecorder recorder = recorders.get(route);
+                    HttpRequest request = request(port, route, gzip);
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                        if (response.statusCode() == 200) {
+                            recorder.record(System.nanoTime() - start);
+                        } else {
+                            recorder.recordError();
+                        }
+                    } catch (IOException e) {
+                        recorder.recordError();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "load-" + i);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double elapsed = (System.nanoTime() - startedAt) / 1e9;
+
+        long total = 0;
+        System.out.printf("http load: %d clients, %.1f s, gzip %s%n", concurrency, elapsed, gzip);
+        for (LatencyRecorder recorder : recorders.values()) {
+            System.out.println(recorder.report(elapsed));
+            total += recorder.count();
+        }
+        System.out.printf("total            %8d requests %10.1f/s, %d commands dispatched%n", total, total / elapsed, server.dispatchedCommands());
+        System.out.println(allocation.report(total));
+
+        httpServer.stop();
+        mainThread.stop();
+        logger.removeHandler(logCaptureHandler);
+        logCaptureHandler.close();
+        server.shutdown();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static HttpRequest request(int port, String route, boolean gzip) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/" + route))
+                .timeout(Duration.ofSeconds(30));
+        if (gzip) {
+            builder.header("Accept-Encoding", "gzip");
+        }
+        if (route.equals("runCommand")) {
+            builder.POST(HttpRequest.BodyPublishers.ofString("{\"command\":\"list\"}"));
+        } else {
+            builder.GET();
+        }
+        return builder.build();
+    }
+}
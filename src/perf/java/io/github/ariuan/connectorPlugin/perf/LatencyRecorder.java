@@ -0,0 +1,60 @@
+package io.github.ariuan.connectorPlugin.perf;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with buckets growing by 2%, so recording doesn't allocate and skew the allocation rate.
+ * Covers 1 microsecond to well over an hour.
+ */
+final class LatencyRecorder {
+    private static final double GROWTH = 1.02;
+    private static final int BUCKETS = 1200;
+
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    LatencyRecorder(String name) {
+        this.name = name;
+    }
+
+    void record(long nanos) {
+        long micros = Math.max(1, TimeUnit.NANOSECONDS.toMicros(nanos));
+        int bucket = (int) Math.min(BUCKETS - 1, Math.log(micros) / Math.log(GROWTH));
+        buckets.incrementAndGet(bucket);
+        count.increment();
+    }
+
+    void recordError() {
+        errors.increment();
+    }
+
+    long count() {
+        return count.sum();
+    }
+
+    /**
+     * @return upper bound of the bucket holding the percentile, in microseconds
+     */
+    long percentileMicros(double percentile) {
+        long total = count.sum();
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) return (long) Math.ceil(Math.pow(GROWTH, i + 1));
+        }
+        return (long) Math.pow(GROWTH, BUCKETS);
+    }
+
+    String report(double seconds) {
+        return String.format(Locale.ROOT, "%-16s %8d ok %6d err %10.1f/s   p50 %9.2f ms   p99 %9.2f ms   max %9.2f ms",
+                name, count(), errors.sum(), count() / seconds,
+                percentileMicros(0.50) / 1000.0, percentileMicros(0.99) / 1000.0, percentileMicros(1.0) / 1000.0);
+    }
+}
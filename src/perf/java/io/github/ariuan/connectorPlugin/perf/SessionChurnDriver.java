@@ -0,0 +1,141 @@
+package io.github.ariuan.connectorPlugin.perf;
+
+import io.github.ariuan.connectorPlugin.BackendClient;
+import io.github.ariuan.connectorPlugin.EventPublisher;
+import io.github.ariuan.connectorPlugin.MainThreadExecutor;
+import io.github.ariuan.connectorPlugin.PlayerFreezer;
+import io.github.ariuan.connectorPlugin.PlayerVerificationManager;
+import io.github.ariuan.connectorPlugin.SharedVerificationTable;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps a population of fake players joining, heartbeating and quitting against {@link PlayerVerificationManager},
+ * with the stub backend in place of the real API.
+ * <p>
+ * Options: --players 200 --seconds 30 --churn 0.02 (share of players quitting per second) --tick-ms 50
+ * --heartbeat-ticks 40 --budget-micros 2000 --latency-ms 20 --jitter-ms 30 --failure-rate 0 --lease-seconds 0 --next-check-seconds 0
+ * --player-pool 0 (distinct names that rejoin, 0 for a new player on every join) --shared-table directory
+ * --events false (publish join, quit and verification events) --event-batch 100 --event-flush-ms 1000
+ */
+public final class SessionChurnDriver {
+    public static void main(String[] args) throws Exception {
+        Options options = new Options(args);
+        int targetPlayers = (int) options.getLong("players", 200);
+        long seconds = options.getLong("seconds", 30);
+        double churn = options.getDouble("churn", 0.02);
+        long tickMillis = options.getLong("tick-ms", 50);
+        long playerPool = options.getLong("player-pool", 0);
+        if (playerPool > 0 && playerPool <= targetPlayers) {
+            throw new IllegalArgumentException("--player-pool must be larger than --players");
+        }
+        String sharedTableDirectory = options.get("shared-table", "");
+        SharedVerificationTable sharedTable = sharedTableDirectory.isEmpty() ? null : SharedVerificationTable.open(new File(sharedTableDirectory), 65536);
+
+        StubBackend backend = new StubBackend(options.getLong("latency-ms", 20), options.getLong("jitter-ms", 30),
+                options.getDouble("failure-rate", 0), options.getLong("lease-seconds", 0), options.getLong("next-check-seconds", 0));
+        FakeServer server = new FakeServer(tickMillis);
+        // Unfreeze and verification messages would drown the report
+        server.plugin().getLogger().setLevel(Level.WARNING);
+        Logger logger = Logger.getLogger("SessionChurnDriver");
+        BackendClient backendClient = new BackendClient(logger, List.of(backend.url()), "/ping", 10, 0.95);
+        PlayerFreezer freezer = new PlayerFreezer(server.plugin(), PlayerFreezer.FreezeMode.CANCEL);
+        EventPublisher eventPublisher = null;
+        if (options.get("events", "false").equals("true")) {
+            eventPublisher = new EventPublisher(logger, backendClient, 25565, 10000, (int) options.getLong("event-batch", 100), options.getLong("event-flush-ms", 1000));
+            eventPublisher.start();
+        }
+        EventPublisher events = eventPublisher;
+        MainThreadExecutor mainThread = new MainThreadExecutor(server.plugin(), options.getLong("budget-micros", 2000), 1000);
+        mainThread.start();
+        PlayerVerificationManager manager = new PlayerVerificationManager(server.plugin(), freezer, backendClient, mainThread,
+                options.getLong("heartbeat-ticks", 40), 60, 1, 3600, false, false, sharedTable, 300, events);
+        server.onKick(manager::stopMonitoring);
+
+        LatencyRecorder verifyLatency = new LatencyRecorder("join->verified");
+        LatencyRecorder tickLag = new LatencyRecorder("main tick lag");
+        Map<UUID, Long> pendingJoins = new ConcurrentHashMap<>();
+        double quitChancePerTick = churn * tickMillis / 1000.0;
+        long[] counters = new long[3]; // joins, quits, names handed out, only touched on the main thread
+        long[] lastTick = {System.nanoTime()};
+
+        AllocationMeter allocation = new AllocationMeter();
+        allocation.start();
+        long startedAt = System.nanoTime();
+
+        BukkitTask churnTask = Bukkit.getScheduler().runTaskTimer(server.plugin(), () -> {
+            long now = System.nanoTime();
+            tickLag.record(Math.max(0, now - lastTick[0] - TimeUnit.MILLISECONDS.toNanos(tickMillis)));
+            lastTick[0] = now;
+
+            for (Player player : server.onlinePlayers()) {
+                if (ThreadLocalRandom.current().nextDouble() < quitChancePerTick) {
+                    server.quit(player);
+                    manager.stopMonitoring(player);
+                    if (events != null) events.publish(EventPublisher.event("quit", player.getUniqueId(), player.getName()));
+                    pendingJoins.remove(player.getUniqueId());
+                    counters[1]++;
+                }
+            }
+            while (server.onlinePlayers().size() < targetPlayers) {
+                long next = counters[2]++;
+                String name = "player" + (playerPool > 0 ? next % playerPool : next);
+                if (Bukkit.getPlayerExact(name) != null) continue;
+                Player player = server.join(name);
+                counters[0]++;
+                if (events != null) events.publish(EventPublisher.event("join", player.getUniqueId(), name));
+                pendingJoins.put(player.getUniqueId(), System.nanoTime());
+                manager.verifyPlayer(player);
+            }
+            for (Iterator<Map.Entry<UUID, Long>> it = pendingJoins.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<UUID, Long> entry = it.next();
+                if (manager.isVerified(entry.getKey())) {
+                    verifyLatency.record(now - entry.getValue());
+                    it.remove();
+                }
+            }
+        }, 1, 1);
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        server.runOnMain(churnTask::cancel).join();
+        double elapsed = (System.nanoTime() - startedAt) / 1e9;
+
+        // The shutdown drain path, one batched report for everyone still online
+        LatencyRecorder flushLatency = new LatencyRecorder("final flush");
+        long flushStart = System.nanoTime();
+        List<Player> online = new ArrayList<>(server.onlinePlayers());
+        server.runOnMain(() -> manager.flushSessions().join()).get(30, TimeUnit.SECONDS);
+        flushLatency.record(System.nanoTime() - flushStart);
+        if (events != null) {
+            events.flush().get(30, TimeUnit.SECONDS);
+            events.stop();
+            System.out.println("events dropped: " + events.getDropped());
+        }
+
+        System.out.printf("session churn: %d players target, %d joins, %d quits, %d kicks in %.1f s%n",
+                targetPlayers, counters[0], counters[1], server.kicks(), elapsed);
+        System.out.println(verifyLatency.report(elapsed));
+        System.out.println(tickLag.report(elapsed));
+        System.out.println(flushLatency.report(1) + "   (" + online.size() + " sessions)");
+        System.out.println(backend.report(elapsed));
+        System.out.println(allocation.report(counters[0]));
+
+        backendClient.shutdown();
+        if (sharedTable != null) sharedTable.close();
+        backend.stop();
+        server.shutdown();
+    }
+}
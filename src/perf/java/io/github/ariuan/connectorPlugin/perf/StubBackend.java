@@ -0,0 +1,109 @@
+package io.github.ariuan.connectorPlugin.perf;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import fi.iki.elonen.NanoHTTPD;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process stand-in for the backend API, answering /verify, /play, /play/batch, /events, /cancelShutdown and /ping.
+ * Each request waits latencyMillis plus up to jitterMillis, and fails with a 500 at failureRate.
+ */
+final class StubBackend extends NanoHTTPD {
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final double failureRate;
+    private final long leaseSeconds;
+    private final long nextCheckSeconds;
+    private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder events = new LongAdder();
+
+    /**
+     * @param leaseSeconds     Lease handed out by /verify and /play, 0 for none
+     * @param nextCheckSeconds Heartbeat hint returned by /play, 0 for none
+     */
+    StubBackend(long latencyMillis, long jitterMillis, double failureRate, long leaseSeconds, long nextCheckSeconds) throws IOException {
+        super("127.0.0.1", 0);
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.failureRate = failureRate;
+        this.leaseSeconds = leaseSeconds;
+        this.nextCheckSeconds = nextCheckSeconds;
+        start(SOCKET_READ_TIMEOUT, true);
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + getListeningPort();
+    }
+
+    @Override
+    public Response serve(IHTTPSession session) {
+        String uri = session.getUri();
+        Map<String, String> files = new HashMap<>();
+        try {
+            // The body has to be consumed for keep-alive connections
+            session.parseBody(files);
+        } catch (IOException | ResponseException e) {
+            return newFixedLengthResponse(Response.Status.BAD_REQUEST, MIME_PLAINTEXT, e.getMessage());
+        }
+        requests.computeIfAbsent(uri, key -> new LongAdder()).increment();
+        simulateLatency();
+        if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+            failures.increment();
+            return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, MIME_PLAINTEXT, "Injected failure");
+        }
+
+        JsonObject response = new JsonObject();
+        switch (uri) {
+            case "/ping" -> {
+                return newFixedLengthResponse("pong");
+            }
+            case "/verify" -> {
+                response.addProperty("verified", true);
+                if (leaseSeconds > 0) response.addProperty("leaseSeconds", leaseSeconds);
+            }
+            case "/play" -> {
+                response.addProperty("kick", false);
+                if (leaseSeconds > 0) response.addProperty("leaseSeconds", leaseSeconds);
+                if (nextCheckSeconds > 0) response.addProperty("nextCheckSeconds", nextCheckSeconds);
+            }
+            case "/play/batch" -> response.addProperty("success", true);
+            case "/events" -> {
+                JsonObject batch = JsonParser.parseString(files.getOrDefault("postData", "{}")).getAsJsonObject();
+                events.add(batch.has("events") ? batch.getAsJsonArray("events").size() : 0);
+                response.addProperty("success", true);
+            }
+            case "/cancelShutdown" -> response.addProperty("allowed", true);
+            default -> {
+                return newFixedLengthResponse(Response.Status.NOT_FOUND, MIME_PLAINTEXT, "Not Found");
+            }
+        }
+        return newFixedLengthResponse(Response.Status.OK, "application/json", response.toString());
+    }
+
+    private void simulateLatency() {
+        long delay = latencyMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+        if (delay <= 0) return;
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    String report(double seconds) {
+        StringBuilder builder = new StringBuilder();
+        requests.forEach((uri, count) -> builder.append(String.format(Locale.ROOT, "backend %-16s %8d requests %10.1f/s%n", uri, count.sum(), count.sum() / seconds)));
+        if (events.sum() > 0) builder.append(String.format(Locale.ROOT, "backend events received: %d%n", events.sum()));
+        builder.append(String.format(Locale.ROOT, "backend failures injected: %d", failures.sum()));
+        return builder.toString();
+    }
+}